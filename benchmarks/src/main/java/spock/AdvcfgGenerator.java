@@ -0,0 +1,94 @@
+package spock;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Writes synthetic .advcfg map configuration files for the benchmarks: a map of the given size in
+ * which each location is populated with the given probability, with the same mix of things as
+ * StarTrek.advcfg (mostly energy cores, beams and Klingons, one Spock, and a Khan per few hundred
+ * locations). The player starts at 0,0, which is always left empty. The same seed always writes
+ * the same file.
+ *
+ * Usage: java AdvcfgGenerator rows columns density seed file.advcfg
+ */
+public class AdvcfgGenerator {
+
+    private static final String ENERGY = "energy/You found an energy core for your phaser!/phaser/"
+            + "Your energy detector beeps.../";
+    private static final String BEAM = "beam/ZAP! Scotty beamed you to a new location!/randomMove/"
+            + "In the distance, you hear: \"Aye, captain.\"/";
+    private static final String KLINGON = "klingon/Watch out! A Klingon surprise attack!/lose/"
+            + "In the distance, you hear: \"vaQ! may'morgh!\"/";
+    private static final String KHAN = "khan/AARGH! An ambush! You submitted to the wrath of Khan!/"
+            + "lose/In the distance, you hear: \"Revenge is a dish best served cold.\"/";
+    private static final String SPOCK = "spock/\"Live long and prosper.\" Congratulations! "
+            + "You found Spock!/win/In the distance, you hear: \"Vulcans never bluff...\"/";
+
+    /**
+     * Writes a map configuration file.
+     *
+     * @param file    The file to write.
+     * @param rows    The number of rows in the map.
+     * @param columns The number of columns in the map.
+     * @param density The probability that a location is populated, between 0 and 1.
+     * @param seed    The seed for choosing the locations and what is at them.
+     * @return The number of populated locations written.
+     * @throws IOException On error writing the file.
+     */
+    public static long generate(Path file, int rows, int columns, double density, long seed)
+            throws IOException {
+        Random rand = new Random(seed);
+        long populated = 0;
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("Synthetic map, " + rows + " x " + columns + ", density " + density + "\n");
+            out.write(rows + "," + columns + "/size/This is the size of the map///\n");
+            out.write("0,0/start////\n");
+            boolean spock = false;
+            for (int row = 0; row < rows; row++) {
+                for (int column = 0; column < columns; column++) {
+                    if ((row == 0 && column == 0) || rand.nextDouble() >= density) {
+                        continue;
+                    }
+                    String thing;
+                    int pick = rand.nextInt(300);
+                    if (!spock) {
+                        thing = SPOCK;
+                        spock = true;
+                    } else if (pick == 0) {
+                        thing = KHAN;
+                    } else if (pick < 140) {
+                        thing = ENERGY;
+                    } else if (pick < 220) {
+                        thing = KLINGON;
+                    } else {
+                        thing = BEAM;
+                    }
+                    out.write(row + "," + column + "/" + thing + "\n");
+                    populated++;
+                }
+            }
+        }
+        return populated;
+    }
+
+    /**
+     * Writes a map configuration file from the command line.
+     *
+     * @param args See the class comment.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 5) {
+            System.out.println("Usage: java AdvcfgGenerator rows columns density seed file.advcfg");
+            return;
+        }
+        long populated = generate(Paths.get(args[4]), Integer.parseInt(args[0]),
+                Integer.parseInt(args[1]), Double.parseDouble(args[2]), Long.parseLong(args[3]));
+        System.out.println("Wrote " + populated + " locations to " + args[4]);
+    }
+}
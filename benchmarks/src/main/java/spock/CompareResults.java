@@ -0,0 +1,213 @@
+package spock;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares a JMH JSON result file (from -rf json) with a baseline, such as
+ * benchmarks/baseline.json, and prints the change in score and in bytes allocated per operation
+ * (from -prof gc) of every benchmark and parameter set that is in both. A higher score is better
+ * in throughput mode (thrpt), a lower one in the modes that time an operation (avgt, sample and
+ * ss). Changes of more than the threshold are marked, and the exit status is 1 if any benchmark
+ * got slower by more than the threshold. Benchmarks that aren't in the baseline are listed as
+ * new, so that they aren't overlooked.
+ *
+ * Usage: java -cp benchmarks.jar spock.CompareResults baseline.json results.json [threshold %]
+ */
+public class CompareResults {
+
+    private static final String ALLOCATION = "gc.alloc.rate.norm";
+
+    /**
+     * Prints the comparison.
+     *
+     * @param args See the class comment.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: java -cp benchmarks.jar spock.CompareResults baseline.json "
+                    + "results.json [threshold %]");
+            return;
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+        Map<String, double[]> baseline = scores(args[0]);
+        Map<String, double[]> results = scores(args[1]);
+
+        boolean regressed = false;
+        System.out.printf("%-70s %14s %14s %8s %12s %12s%n", "Benchmark", "Baseline", "Now",
+                "Change", "B/op before", "B/op now");
+        for (Map.Entry<String, double[]> entry : results.entrySet()) {
+            double[] before = baseline.get(entry.getKey());
+            double[] now = entry.getValue();
+            if (before == null) {
+                System.out.printf("%-70s %14s %14.3f %8s %12s %12.0f  new%n", entry.getKey(), "-",
+                        now[0], "", "-", now[1]);
+                continue;
+            }
+            double change = 100 * (now[0] - before[0]) / before[0];
+            // the change in speed, positive when faster whichever way the score goes
+            double speedup = change * now[2];
+            String mark = speedup < -threshold ? "  SLOWER" : speedup > threshold ? "  faster"
+                    : "";
+            regressed |= speedup < -threshold;
+            System.out.printf("%-70s %14.3f %14.3f %+7.1f%% %12.0f %12.0f%s%n", entry.getKey(),
+                    before[0], now[0], change, before[1], now[1], mark);
+        }
+        if (regressed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Reads a JMH JSON result file.
+     *
+     * @return For each benchmark with its parameters, its score, its bytes allocated per
+     *         operation (NaN when the gc profiler wasn't used), and 1 if a higher score is better
+     *         or -1 if a lower one is.
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, double[]> scores(String fileName) throws IOException {
+        String json = new String(Files.readAllBytes(Paths.get(fileName)), StandardCharsets.UTF_8);
+        List<Object> runs = (List<Object>) new Parser(json).value();
+        Map<String, double[]> scores = new LinkedHashMap<>();
+        for (Object run : runs) {
+            Map<String, Object> result = (Map<String, Object>) run;
+            StringBuilder key = new StringBuilder((String) result.get("benchmark"));
+            Map<String, Object> params = (Map<String, Object>) result.get("params");
+            if (params != null) {
+                params.forEach((name, value) -> key.append(' ').append(name).append('=')
+                        .append(value));
+            }
+            Map<String, Object> primary = (Map<String, Object>) result.get("primaryMetric");
+            double allocation = Double.NaN;
+            Map<String, Object> secondary = (Map<String, Object>) result.get("secondaryMetrics");
+            if (secondary != null) {
+                for (Map.Entry<String, Object> metric : secondary.entrySet()) {
+                    if (metric.getKey().endsWith(ALLOCATION)) {
+                        Map<String, Object> value = (Map<String, Object>) metric.getValue();
+                        allocation = number(value.get("score"));
+                    }
+                }
+            }
+            double better = "thrpt".equals(result.get("mode")) ? 1 : -1;
+            scores.put(key.toString().replaceFirst("^spock\\.", ""),
+                    new double[] { number(primary.get("score")), allocation, better });
+        }
+        return scores;
+    }
+
+    private static double number(Object value) {
+        return value instanceof Double ? (Double) value : Double.NaN;
+    }
+
+    /**
+     * Just enough of a JSON parser for JMH's result files: objects become maps, arrays lists,
+     * numbers doubles, and "NaN" strings (which JMH writes for missing values) stay strings.
+     */
+    private static class Parser {
+        private final String text;
+        private int position;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        Object value() {
+            skipSpace();
+            char c = text.charAt(position);
+            if (c == '{') {
+                Map<String, Object> object = new LinkedHashMap<>();
+                position++;
+                skipSpace();
+                if (text.charAt(position) == '}') {
+                    position++;
+                    return object;
+                }
+                while (true) {
+                    skipSpace();
+                    String name = string();
+                    skipSpace();
+                    expect(':');
+                    object.put(name, value());
+                    skipSpace();
+                    if (text.charAt(position++) == '}') {
+                        return object;
+                    }
+                }
+            } else if (c == '[') {
+                List<Object> array = new ArrayList<>();
+                position++;
+                skipSpace();
+                if (text.charAt(position) == ']') {
+                    position++;
+                    return array;
+                }
+                while (true) {
+                    array.add(value());
+                    skipSpace();
+                    if (text.charAt(position++) == ']') {
+                        return array;
+                    }
+                }
+            } else if (c == '"') {
+                return string();
+            } else if (text.startsWith("true", position)) {
+                position += 4;
+                return Boolean.TRUE;
+            } else if (text.startsWith("false", position)) {
+                position += 5;
+                return Boolean.FALSE;
+            } else if (text.startsWith("null", position)) {
+                position += 4;
+                return null;
+            }
+            int start = position;
+            while (position < text.length()
+                    && "+-0123456789.eE".indexOf(text.charAt(position)) >= 0) {
+                position++;
+            }
+            return Double.parseDouble(text.substring(start, position));
+        }
+
+        private String string() {
+            expect('"');
+            StringBuilder string = new StringBuilder();
+            while (text.charAt(position) != '"') {
+                char c = text.charAt(position++);
+                if (c == '\\') {
+                    c = text.charAt(position++);
+                    if (c == 'u') {
+                        c = (char) Integer.parseInt(text.substring(position, position + 4), 16);
+                        position += 4;
+                    } else if (c == 'n') {
+                        c = '\n';
+                    } else if (c == 't') {
+                        c = '\t';
+                    }
+                }
+                string.append(c);
+            }
+            position++;
+            return string.toString();
+        }
+
+        private void expect(char c) {
+            if (text.charAt(position) != c) {
+                throw new IllegalArgumentException("Expected " + c + " at " + position);
+            }
+            position++;
+        }
+
+        private void skipSpace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+    }
+}
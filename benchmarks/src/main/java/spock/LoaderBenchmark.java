@@ -0,0 +1,39 @@
+package spock;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Loading a map: the Scanner based reference loader behind loadAdventure, the memory mapped
+ * loader the game uses, and a map compiled with MapCompiler.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class LoaderBenchmark {
+
+    @Benchmark
+    public String[][][] loadAdventure(MapFiles files) throws IOException {
+        return Adventure.loadAdventure(files.config, new int[2]);
+    }
+
+    @Benchmark
+    public World mappedLoad(MapFiles files) throws IOException {
+        return MappedConfigLoader.load(files.config, new int[2], false);
+    }
+
+    @Benchmark
+    public World compiledLoad(MapFiles files) throws IOException {
+        return MapCompiler.load(files.compiled, new int[2]);
+    }
+}
@@ -0,0 +1,55 @@
+package spock;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * A synthetic map for a benchmark trial, written by AdvcfgGenerator into a temporary directory,
+ * along with its compiled binary form. The size is the number of rows and of columns.
+ */
+@State(Scope.Benchmark)
+public class MapFiles {
+
+    @Param({ "64", "512" })
+    public int size;
+
+    @Param({ "0.05", "0.5" })
+    public double density;
+
+    public Path directory;
+    public String config;
+    public String compiled;
+
+    @Setup
+    public void write() throws IOException {
+        directory = Files.createTempDirectory("spock-bench");
+        config = directory.resolve("map.advcfg").toString();
+        compiled = directory.resolve("map.advmap").toString();
+        AdvcfgGenerator.generate(Path.of(config), size, size, density, 42);
+        MapCompiler.compile(config, compiled);
+    }
+
+    /**
+     * @param start Updated with the player's starting location.
+     * @return The map loaded with the default loader.
+     */
+    public World load(int[] start) throws IOException {
+        return MappedConfigLoader.load(config, start);
+    }
+
+    @TearDown
+    public void delete() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+}
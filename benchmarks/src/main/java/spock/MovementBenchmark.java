@@ -0,0 +1,92 @@
+package spock;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One turn's worth of moving around a map: stepping with the array and packed APIs, entering a
+ * location, beaming to a random empty location and sensing the neighbors. Each operation walks
+ * the player in a fixed cycle of directions, so every run covers the same locations.
+ *
+ * The console methods Adventure.enter and Adventure.senseNearby print, so entering and sensing
+ * are measured through Rules, which they wrap.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MovementBenchmark {
+
+    private static final String[] DIRECTIONS = { Config.MOVE_UP, Config.MOVE_RIGHT,
+            Config.MOVE_RIGHT, Config.MOVE_DOWN, Config.MOVE_LEFT, Config.MOVE_DOWN };
+
+    private World world;
+    private int[] start;
+    private int[] location;
+    private long position;
+    private GameState state;
+    private Random rand;
+    private int turn;
+
+    @Setup
+    public void load(MapFiles files) throws IOException {
+        start = new int[2];
+        world = files.load(start);
+        location = start.clone();
+        position = Location.pack(start[Config.ROW], start[Config.COLUMN]);
+        rand = new Random(42);
+        state = new GameState(start[Config.ROW], start[Config.COLUMN], rand);
+    }
+
+    private String nextDirection() {
+        turn = turn == DIRECTIONS.length - 1 ? 0 : turn + 1;
+        return DIRECTIONS[turn];
+    }
+
+    @Benchmark
+    public int[] determineLocation() {
+        location = Adventure.determineLocation(world, location, nextDirection());
+        return location;
+    }
+
+    @Benchmark
+    public long determineLocationPacked() {
+        position = Adventure.determineLocation(world, position, nextDirection());
+        return position;
+    }
+
+    @Benchmark
+    public int[] pickRandomLocation() {
+        Adventure.pickRandomLocation(world, location, rand);
+        return location;
+    }
+
+    @Benchmark
+    public int moveAndEnter() {
+        int outcome = Rules.move(world, state, Rules.command(nextDirection()));
+        if (Rules.isFinished(outcome)) {
+            state.reset(start[Config.ROW], start[Config.COLUMN], turn);
+        }
+        return outcome;
+    }
+
+    @Benchmark
+    public String senseNearby() {
+        state.position = Rules.step(world, state.position, Rules.command(nextDirection()));
+        return Rules.sense(world, state);
+    }
+}
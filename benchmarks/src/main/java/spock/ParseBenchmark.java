@@ -0,0 +1,46 @@
+package spock;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing the parts of one .advcfg line with the reference parser.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParseBenchmark {
+
+    // not constants, so that the parsing isn't folded away
+    public String coordinates = "127,4031";
+    public String notCoordinates = "These configuration lines may exceed 100 characters.";
+    public String fields = "klingon/Watch out! A Klingon surprise attack!/lose/"
+            + "In the distance, you hear: \"vaQ! may'morgh!\"/";
+
+    @Benchmark
+    public int[] parseCoordinates() {
+        return Adventure.parseCoordinates(coordinates);
+    }
+
+    @Benchmark
+    public int[] parseNotCoordinates() {
+        return Adventure.parseCoordinates(notCoordinates);
+    }
+
+    @Benchmark
+    public String[] parseFields() {
+        return Adventure.parseFields(fields);
+    }
+}
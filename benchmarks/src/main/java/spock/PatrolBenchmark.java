@@ -0,0 +1,70 @@
+package spock;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Moving patrols around a 2048 x 2048 map with 5% of its locations populated: one tick of every
+ * patrol, and sensing the neighbors as the player walks among them. The number of patrols is the
+ * map's own Klingons and Khan plus the extra Klingons, so a tick should cost about the same per
+ * patrol whatever their number.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PatrolBenchmark {
+
+    private static final int SIZE = 2048;
+    private static final int[] DIRECTIONS = { Rules.UP, Rules.RIGHT, Rules.RIGHT, Rules.DOWN,
+            Rules.LEFT, Rules.DOWN };
+
+    @Param({ "1000", "100000" })
+    public int extra;
+
+    private PatrolWorld world;
+    private GameState state;
+    private int turn;
+
+    @Setup
+    public void load() throws IOException {
+        Path config = Files.createTempFile("spock-patrol", ".advcfg");
+        try {
+            AdvcfgGenerator.generate(config, SIZE, SIZE, 0.05, 42);
+            int[] start = new int[2];
+            world = PatrolWorld.of(MappedConfigLoader.load(config.toString(), start), 42, extra);
+            state = new GameState(start[Config.ROW], start[Config.COLUMN], new GameRandom(42));
+        } finally {
+            Files.delete(config);
+        }
+    }
+
+    @Benchmark
+    public int tick() {
+        world.tick();
+        return world.patrols();
+    }
+
+    @Benchmark
+    public String senseNearby() {
+        turn = turn == DIRECTIONS.length - 1 ? 0 : turn + 1;
+        state.position = Rules.step(world, state.position, DIRECTIONS[turn]);
+        return Rules.sense(world, state);
+    }
+}
@@ -0,0 +1,66 @@
+package spock;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Drawing the debug map after a move: rewriting the whole file with writeMap, patching it with
+ * MapRenderer, and redrawing a MapRenderer viewport.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RenderBenchmark {
+
+    private World world;
+    private String mapFile;
+    private MapRenderer full;
+    private MapRenderer viewport;
+    private int[] player;
+
+    @Setup
+    public void load(MapFiles files) throws IOException {
+        player = new int[2];
+        world = files.load(player);
+        mapFile = files.directory.resolve("writeMap.txt").toString();
+        full = new MapRenderer(world, files.directory.resolve("full.txt").toString(),
+                MapRenderer.FULL_MAP);
+        viewport = new MapRenderer(world, files.directory.resolve("viewport.txt").toString(), 10);
+        full.render(player);
+        viewport.render(player);
+    }
+
+    private int[] move() {
+        Rules.step(world, player, Rules.RIGHT);
+        return player;
+    }
+
+    @Benchmark
+    public void writeMap() {
+        Adventure.writeMap(world, move(), mapFile);
+    }
+
+    @Benchmark
+    public void renderIncremental() {
+        full.render(move());
+    }
+
+    @Benchmark
+    public void renderViewport() {
+        viewport.render(move());
+    }
+}
@@ -0,0 +1,124 @@
+package spock;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The time from starting a new JVM with the game's jar, game/target/game-1.0-SNAPSHOT.jar, to its
+ * first "> " prompt, on src/StarTrek.advcfg with the null audio sink, so that the audio system
+ * starts as it would with audio hardware. Run it from the top of the repository, as the game is.
+ *
+ * The JVM shares classes as the share parameter says: off (-Xshare:off), the JDK's default
+ * archive of its own classes, or app, the AppCDS archive game/target/game.jsa of the game's
+ * classes too. So build with mvn package -Pcds first, which makes the archive, and the benchmark
+ * measures the jar and the archive that ship.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class StartupBenchmark {
+
+    private static final String CONFIGURATION = "src/StarTrek.advcfg";
+    private static final String JAR = "game/target/game-1.0-SNAPSHOT.jar";
+    private static final String ARCHIVE = "game/target/game.jsa";
+
+    @Param({ "off", "default", "app" })
+    public String share;
+
+    private final List<String> command = new ArrayList<>();
+    private Process game;
+
+    @Setup
+    public void prepare() {
+        if (!new File(CONFIGURATION).exists()) {
+            throw new IllegalStateException("Run from the top of the repository, "
+                    + CONFIGURATION + " is missing");
+        }
+        if (!new File(JAR).exists()) {
+            throw new IllegalStateException(JAR + " is missing, build it with mvn package -Pcds");
+        }
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator
+                + "java");
+        if (share.equals("off")) {
+            command.add("-Xshare:off");
+        } else if (share.equals("app")) {
+            if (!new File(ARCHIVE).exists()) {
+                throw new IllegalStateException(ARCHIVE + " is missing, build it with mvn "
+                        + "package -Pcds");
+            }
+            // fail rather than silently start without the archive if it doesn't fit
+            command.add("-Xshare:on");
+            command.add("-XX:SharedArchiveFile=" + ARCHIVE);
+        }
+        command.add("-Dadventure.nullaudio=true");
+        command.add("-jar");
+        command.add(JAR);
+        command.add("-s");
+        command.add("1");
+    }
+
+    /**
+     * Reads the game's output up to its first prompt.
+     */
+    private static void awaitPrompt(Process process) throws IOException {
+        InputStream out = process.getInputStream();
+        int previous = 0;
+        int c;
+        while ((c = out.read()) != -1) {
+            if (previous == '>' && c == ' ') {
+                return;
+            }
+            previous = c;
+        }
+        // such as when the archive doesn't fit the jar or the JDK
+        throw new IllegalStateException("The game ended before its first prompt");
+    }
+
+    private static void quit(Process process, String commands)
+            throws IOException, InterruptedException {
+        try (OutputStream in = process.getOutputStream()) {
+            in.write(commands.getBytes(StandardCharsets.UTF_8));
+        }
+        // read the rest so that the game never blocks on a full pipe
+        process.getInputStream().transferTo(OutputStream.nullOutputStream());
+        process.waitFor();
+    }
+
+    @Benchmark
+    public Process firstPrompt() throws IOException {
+        game = new ProcessBuilder(command).redirectErrorStream(true).start();
+        awaitPrompt(game);
+        return game;
+    }
+
+    @TearDown(Level.Invocation)
+    public void quit() throws IOException, InterruptedException {
+        if (game != null) {
+            quit(game, "q\n");
+            game = null;
+        }
+    }
+}
@@ -1,18 +1,47 @@
-import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.Clip;
 import java.io.File;
 import java.io.IOException;
 import java.io.FileWriter;
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
-import java.util.ArrayList;
+import java.io.UncheckedIOException;
 import java.util.Arrays;
 import java.util.Random;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class Adventure {
 
+    /**
+     * The welcome shown when a game starts, and the list of commands.
+     */
+    public static final String WELCOME = "Welcome to Star Trek: The Search for Spock!\n"
+            + "Find Spock on the deserted planet "
+            + "before suffering humiliating defeat at the hands of mighty Khan!\n"
+            + "Collect energy cores for your phaser to defend against roving Klingon villains!\n";
+    public static final String CONTROLS = "(" + Config.MOVE_UP + ") Up (" + Config.MOVE_DOWN
+            + ") Down (" + Config.MOVE_LEFT + ") Left (" + Config.MOVE_RIGHT + ") Right ("
+            + Config.NEARBY + ") Nearby (" + Config.DISPLAY_CORES + ") Display energy cores ("
+            + Config.QUIT + ") Quit";
+
+    /**
+     * The total time spent in awaitSound, waiting for end of game sounds to finish.
+     */
+    public static long soundWaitNanos = 0;
+
+    /**
+     * Returns a World that views a String[][][] map, see ArrayWorld. The view keeps nothing of its
+     * own, so the map can still be changed directly.
+     *
+     * @param map The map, indexes are row, column, fields/attributes.
+     * @return The map as a World.
+     */
+    public static World world(String[][][] map) {
+        return new ArrayWorld(map);
+    }
+
     /**
      * This writes a map to a file showing the Config.NAME field at each set of coordinates and
      * indicates which location the player is at.
@@ -26,38 +55,32 @@ public class Adventure {
      * @param fileName The name of the file the map is written to.
      */
     public static void writeMap(String[][][] map, int[] player, String fileName) {
-        // Assign icons to different in-game characters
-        char beam = '~';
-        char khan = 'K';
-        char spock = 'S';
-        char klingon = '!';
+        writeMap(world(map), player, fileName);
+    }
+
+    /**
+     * This writes a map to a file showing the icon of the type at each set of coordinates and
+     * indicates which location the player is at.
+     *
+     * @param world    The map.
+     * @param player   The players current location.
+     * @param fileName The name of the file the map is written to.
+     */
+    public static void writeMap(World world, int[] player, String fileName) {
+        // Icons of the in-game characters come from their types, see EntityTypes
+        EntityTypes types = world.types();
         char playerIcon = 'x';
-        char energy = '.';
-        char empty = '-';
         int playerRow = player[0];
         int playerCol = player[1];
 
-        // Write to map using field from Config.NAME
         try {
             FileWriter mapWriter = new FileWriter(fileName);
-            for (int row = 0; row < map.length; row++) {
-                for (int col = 0; col < map[row].length; col++) {
+            for (int row = 0; row < world.rows(); row++) {
+                for (int col = 0; col < world.columns(); col++) {
                     if (row == playerRow && col == playerCol) {
                         mapWriter.write(playerIcon + " ");
-                    } else if (map[row][col] == null) {
-                        mapWriter.write(empty + " ");
-                    } else if (map[row][col][Config.NAME].equals("khan")) {
-                        mapWriter.write(khan + " ");
-                    } else if (map[row][col][Config.NAME].equals("klingon")) {
-                        mapWriter.write(klingon + " ");
-                    } else if (map[row][col][Config.NAME].equals("energy")) {
-                        mapWriter.write(energy + " ");
-                    } else if (map[row][col][Config.NAME].equals("spock")) {
-                        mapWriter.write(spock + " ");
-                    } else if (map[row][col][Config.NAME].equals("beam")) {
-                        mapWriter.write(beam + " ");
                     } else {
-                        mapWriter.write(empty + " ");
+                        mapWriter.write(types.icon(world.type(row, col)) + " ");
                     }
                 }
                 mapWriter.write("\n");
@@ -126,6 +149,29 @@ public class Adventure {
         return fields;
     }
 
+    /**
+     * This reads the map configuration information from the specified file. The map is returned and
+     * the playerStartingLocation array is updated with the starting row and column of the player.
+     *
+     * This is loadWorld returning the map as a String[][][], which for a large sparse map means
+     * allocating every location; prefer loadWorld.
+     *
+     * @param fileName               The configuration file to read, typically ending with .advcfg.
+     * @param playerStartingLocation Updated within this method to contain the starting row and
+     *                               column of the player.
+     * @return The map with the 3 dimensions being, row, column and then fields/attributes at that
+     *         row and column in the map.
+     * @throws FileNotFoundException On error opening the file.
+     */
+    public static String[][][] loadAdventure(String fileName, int[] playerStartingLocation)
+            throws FileNotFoundException {
+        World world = loadWorld(fileName, playerStartingLocation);
+        if (world == null) {
+            return null;
+        }
+        return world.toArray();
+    }
+
     /**
      * This reads the map configuration information from the specified file. The map is returned and
      * the playerStartingLocation array is updated with the starting row and column of the player.
@@ -135,26 +181,35 @@ public class Adventure {
      * parseCoordinates returns null, then go to the next input line. Otherwise, call parseFields
      * with the part of the line after the / to obtain the fields array If these are the first
      * coordinates read from the file, then they are the number of rows and columns in the map.
-     * Allocate the map array with this number of rows and columns, leaving the 3rd dimension
-     * (fields/attributes) null for the moment. If these are Not the first coordinates read from the
-     * file, then they are location coordinates and put the fields array at these coordinates in the
-     * map. If the Config.NAME field contains Config.NAME_START then update the
-     * playerStartingLocation to be this location. return the map.
+     * If these are Not the first coordinates read from the file, then they are location
+     * coordinates and the fields array is kept for these coordinates. If the Config.NAME field
+     * contains Config.NAME_START then update the playerStartingLocation to be this location. Once
+     * the whole file is read, the number of locations kept decides whether the map is stored
+     * densely or sparsely (see World.prefersDense). return the map. A line starting with
+     * EntityTypes.RULE_LINE instead of coordinates adds an entity rule (see EntityTypes), and one
+     * starting with EntityTemplates.TEMPLATE_LINE a template; both apply to every location in the
+     * file wherever they appear. Locations with the same fields/attributes share one array (see
+     * EntityTemplates).
      *
      * @param fileName               The configuration file to read, typically ending with .advcfg.
      * @param playerStartingLocation Updated within this method to contain the starting row and
      *                               column of the player.
-     * @return The map with the 3 dimensions being, row, column and then fields/attributes at that
-     *         row and column in the map.
+     * @return The map, or null if the file contains no coordinates.
      * @throws FileNotFoundException On error opening the file.
      */
-    public static String[][][] loadAdventure(String fileName, int[] playerStartingLocation)
+    public static World loadWorld(String fileName, int[] playerStartingLocation)
             throws FileNotFoundException {
         File file = new File(fileName);
         Scanner fileInput = new Scanner(file);
 
-        String[][][] map = null;
-        boolean sizeOfMap = true;
+        EntityTypes types = new EntityTypes();
+        EntityTemplates templates = new EntityTemplates();
+        int rows = -1;
+        int columns = -1;
+        int count = 0;
+        int[] cellRows = new int[16];
+        int[] cellCols = new int[16];
+        String[][] cells = new String[16][];
 
         while (fileInput.hasNextLine()) {
             String line = fileInput.nextLine();
@@ -163,25 +218,70 @@ public class Adventure {
                 continue;
             }
 
-            int[] coords = parseCoordinates(line.substring(0, firstFieldSeparator));
+            String prefix = line.substring(0, firstFieldSeparator);
+            int[] coords = parseCoordinates(prefix);
             if (coords == null) {
+                if (prefix.trim().equalsIgnoreCase(EntityTypes.RULE_LINE)) {
+                    types.define(parseFields(line.substring(firstFieldSeparator + 1)));
+                } else if (prefix.trim().equalsIgnoreCase(EntityTemplates.TEMPLATE_LINE)) {
+                    templates.define(parseFields(line.substring(firstFieldSeparator + 1)));
+                }
                 continue;
             }
 
             String[] fields = parseFields(line.substring(firstFieldSeparator + 1));
 
-            if (sizeOfMap) {
-                map = new String[coords[Config.ROW]][coords[Config.COLUMN]][];
-                sizeOfMap = false;
+            if (rows < 0) {
+                rows = coords[Config.ROW];
+                columns = coords[Config.COLUMN];
             } else {
-                if (fields[Config.NAME].equalsIgnoreCase(Config.NAME_START)) {
-                    playerStartingLocation[Config.ROW] = coords[Config.ROW];
-                    playerStartingLocation[Config.COLUMN] = coords[Config.COLUMN];
+                if (count == cells.length) {
+                    cellRows = Arrays.copyOf(cellRows, count * 2);
+                    cellCols = Arrays.copyOf(cellCols, count * 2);
+                    cells = Arrays.copyOf(cells, count * 2);
                 }
-                map[coords[Config.ROW]][coords[Config.COLUMN]] = fields;
+                cellRows[count] = coords[Config.ROW];
+                cellCols[count] = coords[Config.COLUMN];
+                cells[count] = fields;
+                count++;
+            }
+        }
+        fileInput.close();
+        if (rows < 0) {
+            return null;
+        }
+        // templates can be declared after the locations that refer to them
+        for (int i = 0; i < count; i++) {
+            cells[i] = templates.resolve(cells[i]);
+            if (cells[i][Config.NAME].equalsIgnoreCase(Config.NAME_START)) {
+                playerStartingLocation[Config.ROW] = cellRows[i];
+                playerStartingLocation[Config.COLUMN] = cellCols[i];
             }
         }
-        return map;
+        return World.of(rows, columns, cellRows, cellCols, cells, count, types);
+    }
+
+    /**
+     * Builds an index of the empty locations in the map as it is now. Changes made to the map
+     * afterwards aren't seen by the index.
+     *
+     * @param map The map, indexes are row, column, fields/attributes.
+     * @return The index of empty locations in the map.
+     */
+    public static FreeCellIndex freeCellIndex(String[][][] map) {
+        return FreeCellIndex.build(map);
+    }
+
+    /**
+     * Changes the fields/attributes at a location in the map, the same as assigning into the map.
+     *
+     * @param map    The map, indexes are row, column, fields/attributes.
+     * @param row    The row of the location.
+     * @param column The column of the location.
+     * @param fields The new fields/attributes, or null to make the location empty.
+     */
+    public static void setLocation(String[][][] map, int row, int column, String[] fields) {
+        world(map).set(row, column, fields);
     }
 
     /**
@@ -199,71 +299,68 @@ public class Adventure {
      */
     public static int[] determineLocation(String[][][] map, int[] currentLocation,
             String direction) {
-        int currRow = currentLocation[Config.ROW];
-        int currCol = currentLocation[Config.COLUMN];
+        return determineLocation(world(map), currentLocation, direction);
+    }
+
+    /**
+     * Given the map, the currentLocation of the player, and the direction of movement, this returns
+     * a new array with the new location. The map wraps at its edges.
+     *
+     * @param world           The map.
+     * @param currentLocation The current row and column of the player, must not change.
+     * @param direction       The direction of movement Config.UP, Config.DOWN, Config.LEFT,
+     *                        Config.RIGHT
+     * @return The new row and column given the direction of movement.
+     */
+    public static int[] determineLocation(World world, int[] currentLocation, String direction) {
+        long location = Location.pack(currentLocation[Config.ROW], currentLocation[Config.COLUMN]);
         int newLoc[] = new int[2];
-        // Directional controls
-        // Up
-        if (direction.equals(Config.MOVE_UP)) {
-            if (currRow == 0) {
-                currRow = map.length - 1;
-            } else {
-                currRow = currRow - 1;
-            }
-            // Down
-        } else if (direction.equals(Config.MOVE_DOWN)) {
-            if (currRow == map.length - 1) {
-                currRow = 0;
-            } else {
-                currRow = currRow + 1;
-            }
-            // Left
-        } else if (direction.equals(Config.MOVE_LEFT)) {
-            if (currCol == 0) {
-                currCol = map[currRow].length - 1;
-            } else {
-                currCol = currCol - 1;
-            }
-            // Right
-        } else if (direction.equals(Config.MOVE_RIGHT)) {
-            if (currCol == map[currRow].length - 1) {
-                currCol = 0;
-            } else {
-                currCol = currCol + 1;
-            }
-        }
-        // Assemble new coordinate array and return
-        newLoc[0] = currRow;
-        newLoc[1] = currCol;
+        Location.unpack(determineLocation(world, location, direction), newLoc);
         return newLoc;
     }
 
+    /**
+     * Given the map, the location of the player packed by Location.pack, and the direction of
+     * movement, this returns the new packed location. The map wraps at its edges. Nothing is
+     * allocated.
+     *
+     * @param world     The map.
+     * @param location  The current location of the player.
+     * @param direction The direction of movement Config.UP, Config.DOWN, Config.LEFT,
+     *                  Config.RIGHT
+     * @return The new location given the direction of movement.
+     */
+    public static long determineLocation(World world, long location, String direction) {
+        return Rules.step(world, location, Rules.command(direction));
+    }
+
     /**
      * This randomly picks a location in the map that has null fields/attributes and changes the row
      * and column of the location parameter to be that new location. The map is assumed to be
      * rectangular and valid locations are those locations that have null for the field/attributes
      * values in the map.
      *
+     * The map is scanned for empty locations on every call, since it may have been changed
+     * directly, but without allocating. A World loaded with loadWorld picks in constant time.
+     *
      * @param rand     A random number generator
      * @param map      The map, that we can assume is rectangular.
      * @param location Changed to be the coordinates of the new location.
      */
     public static void pickRandomLocation(String[][][] map, int[] location, Random rand) {
-        ArrayList<int[]> availableLocations = new ArrayList<>();
-        for (int row = 0; row < map.length; row++) {
-            for (int column = 0; column < map[0].length; column++) {
-                if (map[row][column] == null) {
-                    availableLocations.add(new int[] { row, column });
-                }
-            }
-        }
-        if (availableLocations.size() > 0) {
-            // randomly pick an available location
-            int[] newLocation = availableLocations.get(rand.nextInt(availableLocations.size()));
-            // update location
-            location[Config.ROW] = newLocation[Config.ROW];
-            location[Config.COLUMN] = newLocation[Config.COLUMN];
-        } else {
+        pickRandomLocation(world(map), location, rand);
+    }
+
+    /**
+     * This randomly picks a location in the map that has null fields/attributes and changes the row
+     * and column of the location parameter to be that new location.
+     *
+     * @param rand     A random number generator
+     * @param world    The map.
+     * @param location Changed to be the coordinates of the new location.
+     */
+    public static void pickRandomLocation(World world, int[] location, Random rand) {
+        if (!world.pickFree(rand, location)) {
             System.out.println("Error, no new random location to move to found in the map.");
         }
     }
@@ -278,27 +375,20 @@ public class Adventure {
      * @param rand     A random number generator.
      */
     public static void senseNearby(String[][][] map, int[] location, Random rand) {
-        ArrayList<String> neighbors = new ArrayList<>(java.util.Arrays.asList(Config.MOVE_UP,
-                Config.MOVE_DOWN, Config.MOVE_LEFT, Config.MOVE_RIGHT));
-        while (neighbors.size() > 0) {
-            // randomly choose a neighbor to check and remove them from the list
-            int index = rand.nextInt(neighbors.size());
-            String direction = neighbors.get(index);
-            neighbors.remove(index);
-
-            // calculate a new location based on the current location and direction
-            int[] tempLocation = determineLocation(map, location, direction);
-
-            // obtain the fields from the current location in the map.
-            String[] fields = map[tempLocation[Config.ROW]][tempLocation[Config.COLUMN]];
-            if (fields != null && !fields[Config.NEARBY_TEXT].isBlank()) {
-                System.out.println(fields[Config.NEARBY_TEXT]);
-                break;
-            }
-            if (neighbors.size() == 0) {
-                System.out.println(Config.NEARBY_NULL);
-            }
-        }
+        senseNearby(world(map), location, rand);
+    }
+
+    /**
+     * Check each of the 4 direct neighbors (up, down, left, right) and show their sounds or smells,
+     * in a random order.
+     *
+     * @param world    The map.
+     * @param location The player's location.
+     * @param rand     A random number generator.
+     */
+    public static void senseNearby(World world, int[] location, Random rand) {
+        GameState state = new GameState(location[Config.ROW], location[Config.COLUMN], rand);
+        console(world, state).play(Rules.SENSE);
     }
 
     /**
@@ -320,72 +410,102 @@ public class Adventure {
      * @return true on game finished, false otherwise.
      */
     public static boolean enter(String[][][] map, int[] location, Random rand) {
-        int currRow = location[Config.ROW];
-        int currCol = location[Config.COLUMN];
-        String currLocationFields[] = map[currRow][currCol];
-
-        // Empty space
-        if (currLocationFields == null || currLocationFields[Config.ENTER_RESULT] == null) {
-            System.out.println(Config.RESULT_NULL);
-            return false;
-            // Energy Core == gain a core
-        } else if (currLocationFields[Config.ENTER_RESULT].equals(Config.RESULT_PHASER)) {
-            Config.ENERGY_CORES++;
-            playSound(Config.SOUND_ENERGY);
-            System.out.println(currLocationFields[Config.ENTER_TEXT]);
-            return false;
-            // Beam == random location
-        } else if (currLocationFields[Config.ENTER_RESULT].equals(Config.RESULT_RANDOM_MOVE)) {
-            playSound(Config.SOUND_BEAM);
-            System.out.println(currLocationFields[Config.ENTER_TEXT]);
-            pickRandomLocation(map, location, rand);
-            currLocationFields = map[Config.ROW][Config.COLUMN];
-            return false;
-            // Spock == game over (win!)
-        } else if (currLocationFields[Config.NAME].equals("spock")) {
-            playSound(Config.SOUND_SPOCK);
-            System.out.println(currLocationFields[Config.ENTER_TEXT]);
-            try {
-                Thread.sleep(4200);
-            } catch (InterruptedException ie) {
-                Thread.currentThread().interrupt();
-            }
-            return true;
-            // Khan == game over (lose)
-        } else if (currLocationFields[Config.NAME].equals("khan")) {
-            playSound(Config.SOUND_KHAN);
-            System.out.println(currLocationFields[Config.ENTER_TEXT]);
-            try {
-                Thread.sleep(1500);
-            } catch (InterruptedException ie) {
-                Thread.currentThread().interrupt();
-            }
-            return true;
-            // Klingon == two paths
-        } else if (currLocationFields[Config.NAME].equals("klingon")) {
-            System.out.println(currLocationFields[Config.ENTER_TEXT]);
-            // !Energy cores == game over (lose)
-            if (Config.ENERGY_CORES < 1) {
-                playSound(Config.SOUND_KLINGON);
-                System.out.println(Config.RESULT_NOFIGHT);
-                try {
-                    Thread.sleep(3000);
-                } catch (InterruptedException ie) {
-                    Thread.currentThread().interrupt();
-                }
-                return true;
-                // Energy cores == phaser battle (lose a core)
-            } else {
-                playSound(Config.SOUND_ALERT);
-                playSound(Config.SOUND_PHASER);
-                System.out.println(Config.RESULT_FIGHT);
-                Config.ENERGY_CORES--;
-                return false;
-            }
-            // Empty - if/else catch
-        } else {
-            System.out.println(currLocationFields[Config.ENTER_TEXT]);
-            return false;
+        return enter(world(map), location, rand);
+    }
+
+    /**
+     * The player enters the location in the map. Describe that location to the player.
+     *
+     * @param world    The map.
+     * @param location The players location as row and column in the map
+     * @param rand     A random number generator
+     * @return true on game finished, false otherwise.
+     */
+    public static boolean enter(World world, int[] location, Random rand) {
+        GameState state = new GameState(location[Config.ROW], location[Config.COLUMN], rand);
+        state.cores = Config.ENERGY_CORES;
+        boolean finished = console(world, state).enter();
+        Config.ENERGY_CORES = state.cores;
+        Location.unpack(state.position, location);
+        return finished;
+    }
+
+    /**
+     * @param world The map.
+     * @param state The game.
+     * @return A game that plays its sounds and prints its text to the console as it goes.
+     */
+    public static Game console(World world, GameState state) {
+        Game game = new Game(world, state);
+        // the sounds start before the text is printed, and an end of game sound finishes before
+        // the game ends
+        game.subscribe(new SoundPlayer(world.types()));
+        game.subscribe(new TextView(System.out));
+        return game;
+    }
+
+    /**
+     * Describes the outcome of entering a location to the player, as the lines of text the game
+     * prints.
+     *
+     * @param outcome The outcome, from Rules.enter.
+     * @param fields  The fields/attributes of the location entered.
+     * @param out     The description is appended to this, each line ending with a line separator.
+     */
+    public static void describe(int outcome, String[] fields, StringBuilder out) {
+        String newline = System.lineSeparator();
+        switch (outcome) {
+            // Empty space
+            case Rules.EMPTY:
+                out.append(Config.RESULT_NULL).append(newline);
+                break;
+            // Beam with nowhere to go
+            case Rules.STRANDED:
+                out.append(fields[Config.ENTER_TEXT]).append(newline);
+                out.append("Error, no new random location to move to found in the map.")
+                        .append(newline);
+                break;
+            // Klingon without energy cores == game over (lose)
+            case Rules.LOST_FIGHT:
+                out.append(fields[Config.ENTER_TEXT]).append(newline);
+                out.append(Config.RESULT_NOFIGHT).append(newline);
+                break;
+            // Klingon with energy cores == phaser battle (lose a core)
+            case Rules.PHASER_FIGHT:
+                out.append(fields[Config.ENTER_TEXT]).append(newline);
+                out.append(Config.RESULT_FIGHT).append(newline);
+                break;
+            // Energy core, beam, Spock, Khan and anything else describe themselves
+            default:
+                out.append(fields[Config.ENTER_TEXT]).append(newline);
+                break;
+        }
+    }
+
+    /**
+     * Restores a game saved by the console game's -snapshots option.
+     *
+     * @param saved    The snapshot, see Snapshot.toBytes.
+     * @param state    The game.
+     * @param world    The map the game is played on.
+     * @param renderer The debug map, redrawn where the map's changes differ, or null.
+     */
+    private static void restore(byte[] saved, GameState state, OverlayWorld world,
+            MapRenderer renderer) {
+        Snapshot snapshot;
+        try {
+            snapshot = Snapshot.fromBytes(saved);
+        } catch (IOException e) {
+            // the game's own bytes
+            throw new UncheckedIOException(e);
+        }
+        World.LocationVisitor changed = (row, column, fields) -> renderer.changed(row, column);
+        if (renderer != null) {
+            world.forEachChange(changed);
+        }
+        snapshot.restore(state, world);
+        if (renderer != null) {
+            world.forEachChange(changed);
         }
     }
 
@@ -396,20 +516,48 @@ public class Adventure {
      * project folder. Within that folder there is a sound file named wumpus.wav. Play the
      * "sounds/wumpus.wav" sound file.
      *
+     * The sound is decoded once and mixed with any other sounds playing, see AudioCache.
+     *
      * @param wavFileName Name of the .wav file to play.
+     * @return A future completed when the sound has finished playing, already completed if
+     *         sounds are off or can't be played.
      */
-    public static void playSound(String wavFileName) {
-        File file = new File(wavFileName);
-        if (file.exists()) {
-            try {
-                AudioInputStream audioInputStream = AudioSystem.getAudioInputStream(file);
-                Clip clip = AudioSystem.getClip();
-                clip.open(audioInputStream);
-                clip.start();
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+    public static CompletableFuture<Void> playSound(String wavFileName) {
+        return AudioCache.play(wavFileName);
+    }
+
+    /**
+     * Plays a sound file, see playSound.
+     *
+     * @param wavFileName Name of the .wav file to play.
+     * @param priority    The sound's priority when too many sounds are playing, such as
+     *                    AudioMixer.HIGH.
+     * @return A future completed when the sound has finished playing, already completed if
+     *         sounds are off or can't be played.
+     */
+    public static CompletableFuture<Void> playSound(String wavFileName, int priority) {
+        return AudioCache.play(wavFileName, priority);
+    }
+
+    /**
+     * Waits for a sound to finish playing, so that an end of game sound isn't cut off when the
+     * program exits. Returns at once if the sound was muted or couldn't be played, and gives up
+     * after Config.MAX_SOUND_WAIT milliseconds in case the end of the sound is never reported.
+     *
+     * The time spent waiting is added to soundWaitNanos.
+     *
+     * @param sound The future returned by playSound.
+     */
+    public static void awaitSound(CompletableFuture<Void> sound) {
+        long begin = System.nanoTime();
+        try {
+            sound.get(Config.MAX_SOUND_WAIT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            // the sound is over as far as the game is concerned
         }
+        soundWaitNanos += System.nanoTime() - begin;
     }
 
     /**
@@ -425,10 +573,18 @@ public class Adventure {
         boolean seedInput = false;
         long seed = 0;
         boolean debug = false;
+        int viewport = MapRenderer.FULL_MAP;
+        String metricsFilename = null;
+        boolean infinite = false;
+        int patrol = -1;
+        boolean snapshots = false;
+        boolean consume = false;
 
         // Developer & tester command-line options so not shown to a player.
         // Usage: java Adventure [-s seed] [-c configuration_filename] [-m map_filename]
-        // [-d]
+        // [-d] [-v viewport_radius] [-mute] [-metrics metrics_filename]
+        // [-infinite | -patrol extra_klingons] [-snapshots] [-consume]
+        // The configuration file may be a .advcfg or a map compiled with MapCompiler.
         for (int i = 0; i < args.length; ++i) {
             if (args[i].equalsIgnoreCase("-s")) {
                 seed = Long.parseLong(args[i + 1]);
@@ -442,81 +598,207 @@ public class Adventure {
                 ++i; // additional increment since we are reading the filename
             } else if (args[i].equalsIgnoreCase("-d")) {
                 debug = true;
+            } else if (args[i].equalsIgnoreCase("-v")) {
+                // with -d, only draw the map this many locations around the player
+                viewport = Integer.parseInt(args[i + 1]);
+                ++i;
+            } else if (args[i].equalsIgnoreCase("-mute")) {
+                Config.SOUND_ON = false;
+            } else if (args[i].equalsIgnoreCase("-infinite")) {
+                // generate an endless map around the configured one, see ChunkedWorld
+                infinite = true;
+            } else if (args[i].equalsIgnoreCase("-patrol")) {
+                // the Klingons and Khan move, and this many more Klingons, see PatrolWorld
+                patrol = Integer.parseInt(args[i + 1]);
+                ++i;
+            } else if (args[i].equalsIgnoreCase("-snapshots")) {
+                // "save" and "restore" save and restore the game, see Snapshot
+                snapshots = true;
+            } else if (args[i].equalsIgnoreCase("-consume")) {
+                // energy cores picked up and Klingons defeated are used up, see OverlayWorld
+                consume = true;
+            } else if (args[i].equalsIgnoreCase("-metrics")) {
+                // with -Dadventure.metrics=true, write turn metrics to this file, see Metrics
+                metricsFilename = args[i + 1];
+                ++i;
             }
         }
 
+        if (infinite && patrol >= 0) {
+            System.out.println("Error, -patrol can't be used with -infinite");
+            return;
+        }
+        if (snapshots && patrol >= 0) {
+            // a snapshot leaves the patrols out
+            System.out.println("Error, -snapshots can't be used with -patrol");
+            return;
+        }
+        if (consume && patrol >= 0) {
+            // the patrols are an overlay of their own, and defeated Klingon patrols are gone
+            System.out.println("Error, -consume can't be used with -patrol");
+            return;
+        }
+
+        // start the audio system in the background while the map loads, see AudioCache
+        AudioCache.preload(Config.SOUNDS);
+
         // if a seed is passed on the command line, use it for the random number
         // generator.
         Random rand;
         if (seedInput) {
-            rand = new Random(seed);
+            rand = new GameRandom(seed);
         } else {
-            rand = new Random();
+            rand = new GameRandom();
         }
 
         // load the map and the initial player location in the map
         int[] playerLocation = new int[] { 0, 0 };
-        String[][][] map = null;
+        World map = null;
         try {
-            map = loadAdventure(configurationFile, playerLocation);
+            // -c may also name a map compiled with MapCompiler, which is only used while it is
+            // up to date with the .advcfg it was compiled from
+            if (MapCompiler.isCompiled(configurationFile)) {
+                String staleSource = MapCompiler.staleSource(configurationFile);
+                if (staleSource != null) {
+                    System.out.println("Warning: " + configurationFile + " is older than "
+                            + staleSource + ", loading " + staleSource + " instead.");
+                    configurationFile = staleSource;
+                }
+            }
+            if (MapCompiler.isCompiled(configurationFile)) {
+                map = MapCompiler.load(configurationFile, playerLocation);
+            } else {
+                map = MappedConfigLoader.load(configurationFile, playerLocation);
+            }
             if (map == null) {
                 return;
             }
-        } catch (FileNotFoundException e) {
+        } catch (IOException e) {
             System.out.println("Error, unable to load file: " + configurationFile);
             return;
+        } catch (IllegalArgumentException e) {
+            // such as a reference to an undeclared template or an unknown type
+            System.out.println("Error, bad map in file: " + configurationFile + ": "
+                    + e.getMessage());
+            return;
+        }
+        if (infinite) {
+            // the chunks come from the game's seed, so a seeded game plays out the same
+            map = new ChunkedWorld(map, seedInput ? seed : new Random().nextLong(),
+                    ChunkedWorld.DEFAULT_CACHED_CHUNKS);
+            if (viewport == MapRenderer.FULL_MAP) {
+                viewport = MapRenderer.DEFAULT_RADIUS;
+            }
+        } else if (patrol >= 0) {
+            // patrols move all over the map, so the debug map is redrawn around the player
+            map = PatrolWorld.of(map, seedInput ? seed : new Random().nextLong(), patrol);
+            if (viewport == MapRenderer.FULL_MAP) {
+                viewport = MapRenderer.DEFAULT_RADIUS;
+            }
+        }
+
+        if (snapshots || consume) {
+            map = new OverlayWorld(map, consume);
         }
 
+        // the debug map is drawn once and then patched each turn, see MapRenderer
+        MapRenderer renderer = null;
         if (debug) {
             System.out.println("DEBUG: Drawing map in " + mapFilename);
-            writeMap(map, playerLocation, mapFilename);
+            renderer = new MapRenderer(map, mapFilename, viewport);
+            renderer.render(playerLocation);
+        }
+
+        // decode the map's sounds in the background so that none of them is decoded in the
+        // middle of the game
+        if (Config.SOUND_ON) {
+            EntityTypes types = map.types();
+            for (int type = 0; type < types.count(); type++) {
+                if (types.sound(type) != null) {
+                    AudioCache.preload(types.sound(type));
+                }
+            }
+        }
+
+        if (Config.METRICS) {
+            Metrics.registerMBean();
+            if (metricsFilename != null) {
+                Metrics.export(metricsFilename);
+            }
+        } else if (metricsFilename != null) {
+            System.out.println("Warning: -metrics needs java -Dadventure.metrics=true, "
+                    + "no metrics are recorded.");
         }
 
         // show current location and then loop until game is complete.
-        playSound(Config.SOUND_INTRO);
-        System.out.println(
-                "Welcome to Star Trek: The Search for Spock!\nFind Spock on the deserted planet "
-                        + "before suffering humiliating defeat at the hands of mighty Khan!\n"
-                        + "Collect energy cores for your phaser to defend against roving Klingon villains!\n");
-        System.out.println("Controls: (" + Config.MOVE_UP + ") Up (" + Config.MOVE_DOWN + ") Down ("
-                + Config.MOVE_LEFT + ") Left (" + Config.MOVE_RIGHT + ") Right (" + Config.NEARBY
-                + ") Nearby (" + Config.DISPLAY_CORES + ") Display energy cores (" + Config.QUIT
-                + ") Quit");
-        boolean finished = enter(map, playerLocation, rand);
+        GameState state = new GameState(playerLocation[Config.ROW],
+                playerLocation[Config.COLUMN], rand);
+        Game game = console(map, state);
+        if (consume && renderer != null) {
+            // locations used up are emptied
+            MapRenderer debugMap = renderer;
+            game.subscribe((event, s) -> {
+                if (event == Rules.CORE_GAINED || event == Rules.PHASER_FIGHT) {
+                    debugMap.changed(s.row(), s.column());
+                }
+            });
+        }
+        byte[] saved = null;
+        boolean finished = game.start();
         while (!finished) {
             // prompt for player movement
             System.out.print("> ");
+            long time = Metrics.start();
             String direction = input.nextLine().trim().toLowerCase();
-            switch (direction) {
-                case Config.MOVE_UP:
-                case Config.MOVE_DOWN:
-                case Config.MOVE_LEFT:
-                case Config.MOVE_RIGHT:
-                    playerLocation = determineLocation(map, playerLocation, direction);
-                    finished = enter(map, playerLocation, rand);
-                    break;
-                case Config.NEARBY:
-                    senseNearby(map, playerLocation, rand);
-                    break;
-                case Config.DISPLAY_CORES:
-                    System.out.println("Energy cores: " + Config.ENERGY_CORES);
-                    break;
-                case Config.QUIT:
-                    finished = true;
-                    break;
-                default:
-                    System.out.println("(" + Config.MOVE_UP + ") Up (" + Config.MOVE_DOWN
-                            + ") Down (" + Config.MOVE_LEFT + ") Left (" + Config.MOVE_RIGHT
-                            + ") Right (" + Config.NEARBY + ") Nearby (" + Config.DISPLAY_CORES
-                            + ") Display energy cores (" + Config.QUIT + ") Quit");
-                    break;
+            if (snapshots && direction.equals(Config.SAVE)) {
+                saved = Snapshot.take(state, (OverlayWorld) map).toBytes();
+                System.out.println("Game saved.");
+                continue;
+            } else if (snapshots && direction.equals(Config.RESTORE)) {
+                if (saved == null) {
+                    System.out.println("No game saved yet.");
+                    continue;
+                }
+                restore(saved, state, (OverlayWorld) map, renderer);
+                System.out.println("Game restored, energy cores: " + state.cores);
+                if (debug) {
+                    Location.unpack(state.position, playerLocation);
+                    renderer.render(playerLocation);
+                }
+                continue;
             }
+            // the turn is timed from when the command has been read
+            long turnStart = Metrics.lap(Metrics.READ, time);
+            Metrics.command(direction);
+            finished = game.play(direction);
             if (debug) {
+                Location.unpack(state.position, playerLocation);
                 System.out.printf("DEBUG: player location %d,%d\n", playerLocation[Config.ROW],
                         playerLocation[Config.COLUMN]);
-                writeMap(map, playerLocation, mapFilename);
+                renderer.render(playerLocation);
             }
+            Metrics.lap(Metrics.TURN, turnStart);
         }
         System.out.println("Thanks for playing!");
+        if (debug) {
+            System.out.printf("DEBUG: waited %d ms for end of game sounds\n",
+                    soundWaitNanos / 1000000);
+            System.out.printf("DEBUG: audio cache hits %d, misses %d\n", AudioCache.hits(),
+                    AudioCache.misses());
+            AudioMixer mixer = AudioCache.mixer();
+            if (mixer != null) {
+                System.out.printf("DEBUG: audio mixer%s played %d, dropped %d, stolen %d, "
+                        + "underruns %d, start latency p99 %d us\n",
+                        mixer.isNullSink() ? " (null sink)" : "", mixer.played(), mixer.dropped(),
+                        mixer.stolen(), mixer.underruns(), mixer.startLatency(0.99) / 1000);
+            }
+            if (map instanceof ChunkedWorld) {
+                ChunkedWorld chunked = (ChunkedWorld) map;
+                System.out.printf("DEBUG: chunks generated %d, cached %d\n",
+                        chunked.generatedChunks(), chunked.cachedChunks());
+            }
+        }
+        AudioCache.close();
+        Metrics.close();
     }
 }
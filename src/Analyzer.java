@@ -0,0 +1,595 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Works out whether a map can be won, without playing it, so that unwinnable generated maps are
+ * found before players find them. From a starting location, over the wrapped grid, it finds:
+ *
+ * - the shortest safe path to Spock, one that enters no Khan, Klingon or beam, so it needs no
+ * energy cores and no luck. This is an A* search, guided by the distance to the nearest Spock
+ * (when there are only a few), so on an open map it goes more or less straight there;
+ *
+ * - the fewest Klingons that any path to Spock avoiding Khan and beams has to pass, which is the
+ * number of energy cores the player needs, by flooding the locations reachable passing no
+ * Klingon, then those reachable passing one more, and so on;
+ *
+ * - whether Spock can be reached under the phaser rules of Rules.enter, where each Klingon
+ * passed uses up a core the player must already hold and each energy location entered gives one.
+ * Neither is used up, so a player who can reach an energy location without passing a Klingon can
+ * collect as many cores as they like by going back and forth, and pass any number of Klingons;
+ * a player who can't never passes one. So without a safe path the map is winnable exactly when
+ * Spock can be reached at all and there is energy before the first Klingon;
+ *
+ * - when the map is winnable, the fewest moves under the phaser rules, by an A* search over
+ * locations and the cores held, tracking at most maxCores cores. Passing Klingons may win in
+ * fewer moves than the safe path, so this is searched for even when there is one, unless the map
+ * has no Klingons or no energy, or the safe path is already as short as any path can be;
+ *
+ * - when Spock can't be reached without beams, whether a beam can be, which may land the player
+ * anywhere else. Beams are left out of the paths above because where they land is random.
+ *
+ * What each location does is the action of its type in the map's EntityTypes, so maps with their
+ * own 'type' rules are analyzed by those rules. The locations of each action, the visited
+ * locations and the locations visited with each number of cores held are bitsets, one bit per
+ * location, so a 10k x 10k map takes tens of megabytes per search rather than gigabytes. An
+ * unwinnable map is the slowest to analyze, since every reachable location is looked at.
+ *
+ * Several maps, and several starting locations in each, are analyzed in parallel on a fork-join
+ * pool; the reports are printed in the order given.
+ *
+ * Usage: java Analyzer [-c configuration_filename]... [-start row,column]... [-cores max_cores]
+ * [-threads n] [-path]
+ */
+public class Analyzer {
+
+    /**
+     * The most energy cores held that the phaser search tracks by default.
+     */
+    public static final int DEFAULT_MAX_CORES = 8;
+
+    // the most Spock locations that the safe path search computes the distance to
+    private static final int MAX_TARGETS = 16;
+
+    private static final String[] MOVES = { Config.MOVE_UP, Config.MOVE_DOWN, Config.MOVE_LEFT,
+            Config.MOVE_RIGHT };
+
+    /**
+     * What the analysis of a map from one starting location found. Lengths are in moves, and -1
+     * when there is no such path.
+     */
+    public static class Analysis {
+        public int startRow;
+        public int startColumn;
+        public long spocks;
+        // the shortest path with no Khan, Klingon or beam, and its moves (Config.MOVE_UP, ...)
+        public int safePathLength = -1;
+        public String safePath;
+        // the fewest Klingons on any path without Khan or beams, the energy cores needed
+        public int coresNeeded = -1;
+        // whether Spock can be reached without beams, and in how many moves: the fewest under the
+        // phaser rules holding at most maxCores cores, no more than those of the safe path
+        public boolean winnable;
+        public int winningMoves = -1;
+        // whether the moves weren't searched for because more than maxCores cores are needed
+        public boolean coresCapped;
+        // whether a beam can be reached, only looked for when the map isn't winnable
+        public boolean beamReachable;
+        public long elapsedNanos;
+    }
+
+    private final int rows;
+    private final int columns;
+    private final int locations;
+    private final int words;
+
+    // the locations by action
+    private final long[] lose;
+    private final long[] beam;
+    private final long[] fight;
+    private final long[] energy;
+    private final long[] win;
+    // the locations that are any of the above but energy, so that the searches test one bitset
+    // for the locations that are passed through freely
+    private final long[] special;
+    private long spocks;
+    private long fights;
+    private long energies;
+    // the Spock locations, if there are at most MAX_TARGETS
+    private final int[] targetRows;
+    private final int[] targetColumns;
+
+    /**
+     * Indexes what each location of a map does.
+     *
+     * @param world The map.
+     * @throws IllegalArgumentException If the map has more locations than an int can count, or
+     *                                  can't be listed.
+     */
+    public Analyzer(World world) {
+        World.requireListable(world, "analyzed");
+        if ((long) world.rows() * world.columns() > Integer.MAX_VALUE - 64) {
+            throw new IllegalArgumentException("The map is too large to analyze: " + world.rows()
+                    + " x " + world.columns());
+        }
+        rows = world.rows();
+        columns = world.columns();
+        locations = rows * columns;
+        words = (locations + 63) >>> 6;
+        lose = new long[words];
+        beam = new long[words];
+        fight = new long[words];
+        energy = new long[words];
+        win = new long[words];
+        special = new long[words];
+        int[] spockRows = new int[MAX_TARGETS];
+        int[] spockColumns = new int[MAX_TARGETS];
+        EntityTypes types = world.types();
+        world.forEachPopulated((row, column, fields) -> {
+            int location = row * columns + column;
+            switch (types.action(world.type(row, column))) {
+                case EntityTypes.LOSE:
+                    set(lose, location);
+                    break;
+                case EntityTypes.BEAM:
+                    set(beam, location);
+                    break;
+                case EntityTypes.FIGHT:
+                    set(fight, location);
+                    fights++;
+                    break;
+                case EntityTypes.GAIN_CORE:
+                    set(energy, location);
+                    energies++;
+                    return;
+                case EntityTypes.WIN:
+                    set(win, location);
+                    if (spocks < MAX_TARGETS) {
+                        spockRows[(int) spocks] = row;
+                        spockColumns[(int) spocks] = column;
+                    }
+                    spocks++;
+                    break;
+                default:
+                    return;
+            }
+            set(special, location);
+        });
+        if (spocks <= MAX_TARGETS) {
+            targetRows = Arrays.copyOf(spockRows, (int) spocks);
+            targetColumns = Arrays.copyOf(spockColumns, (int) spocks);
+        } else {
+            targetRows = null;
+            targetColumns = null;
+        }
+    }
+
+    private static boolean get(long[] bits, int index) {
+        return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    private static void set(long[] bits, int index) {
+        bits[index >>> 6] |= 1L << index;
+    }
+
+    /**
+     * Puts the locations one step up, down, left and right of a location, wrapping at the edges
+     * like Location.step, in neighbors[Rules.UP] to neighbors[Rules.RIGHT].
+     */
+    private void neighbors(int location, int[] neighbors) {
+        int row = location / columns;
+        int column = location - row * columns;
+        neighbors[Rules.UP] = row == 0 ? location + locations - columns : location - columns;
+        neighbors[Rules.DOWN] = row == rows - 1 ? column : location + columns;
+        neighbors[Rules.LEFT] = column == 0 ? location + columns - 1 : location - 1;
+        neighbors[Rules.RIGHT] = column == columns - 1 ? location - column : location + 1;
+    }
+
+    /**
+     * @return The fewest moves from a location to the nearest Spock on an empty map, or 0 if
+     *         there are too many Spocks to look at, which never overestimates.
+     */
+    private int distance(int location) {
+        if (targetRows == null) {
+            return 0;
+        }
+        int row = location / columns;
+        int column = location - row * columns;
+        int nearest = Integer.MAX_VALUE;
+        for (int t = 0; t < targetRows.length; t++) {
+            int down = Math.abs(row - targetRows[t]);
+            int across = Math.abs(column - targetColumns[t]);
+            nearest = Math.min(nearest, Math.min(down, rows - down)
+                    + Math.min(across, columns - across));
+        }
+        return nearest;
+    }
+
+    /**
+     * Analyzes the map from a starting location.
+     *
+     * @param startRow    The row the player starts at.
+     * @param startColumn The column the player starts at.
+     * @param maxCores    The most energy cores held that the search for the fewest moves under
+     *                    the phaser rules tracks, which costs a bit per location for each.
+     * @return What was found.
+     */
+    public Analysis analyze(int startRow, int startColumn, int maxCores) {
+        long begin = System.nanoTime();
+        Analysis analysis = new Analysis();
+        analysis.startRow = startRow;
+        analysis.startColumn = startColumn;
+        analysis.spocks = spocks;
+        int start = startRow * columns + startColumn;
+        if (get(win, start)) {
+            analysis.safePathLength = 0;
+            analysis.safePath = "";
+            analysis.coresNeeded = 0;
+        } else if (spocks > 0) {
+            // the flood is quicker than A* at finding that there is no safe path
+            fewestFights(start, analysis);
+            if (analysis.coresNeeded == 0) {
+                safePath(start, analysis);
+            }
+        }
+        if (analysis.safePathLength >= 0) {
+            analysis.winnable = true;
+            analysis.winningMoves = analysis.safePathLength;
+        }
+        // passing Klingons can only be shorter than a safe path that isn't as short as can be
+        boolean shorter = analysis.safePathLength < 0
+                || (fights > 0 && energies > 0 && distance(start) < analysis.safePathLength);
+        if (analysis.winnable && shorter) {
+            // passing the fewest Klingons needs no more cores than that held at once
+            int cores = (int) Math.min(fights, maxCores);
+            if (analysis.coresNeeded > cores) {
+                analysis.coresCapped = true;
+            } else {
+                phaserSearch(start, cores, analysis);
+            }
+        }
+        analysis.elapsedNanos = System.nanoTime() - begin;
+        return analysis;
+    }
+
+    /**
+     * Finds the shortest path to Spock that enters no Khan, Klingon or beam, by A* search.
+     *
+     * The estimate of a location is the moves so far plus the distance to the nearest Spock,
+     * which a move changes by 0, 1 or 2, so the locations waiting are kept in three lists by
+     * estimate, modulo 3, and the lowest estimate is always the current list or one of the next
+     * two. Each location has 4 bits: the direction it was last entered in, to walk the path back,
+     * and its estimate modulo 3, plus 1, when it is waiting (0 when it hasn't been reached), which
+     * tells which of the three estimates it has.
+     */
+    private void safePath(int start, Analysis analysis) {
+        long[] closed = new long[words];
+        long[] reached = new long[(int) (((long) locations * 4 + 63) >>> 6)];
+        IntList[] waiting = { new IntList(), new IntList(), new IntList() };
+        int[] neighbors = new int[4];
+        int estimate = distance(start);
+        waiting[estimate % 3].add(start);
+        for (int remaining = 1; remaining > 0; estimate++) {
+            IntList current = waiting[estimate % 3];
+            // last in first out, so that the search goes deep among equal estimates
+            while (current.size > 0) {
+                int location = current.values[--current.size];
+                remaining--;
+                if (get(closed, location)) {
+                    // reached again with a lower estimate, and already done
+                    continue;
+                }
+                set(closed, location);
+                if (get(win, location)) {
+                    analysis.safePathLength = estimate;
+                    analysis.safePath = walkBack(location, reached, estimate);
+                    return;
+                }
+                int moves = estimate - distance(location) + 1;
+                neighbors(location, neighbors);
+                for (int direction = 0; direction < 4; direction++) {
+                    int neighbor = neighbors[direction];
+                    if (get(closed, neighbor)
+                            || (get(special, neighbor) && !get(win, neighbor))) {
+                        continue;
+                    }
+                    int next = moves + distance(neighbor);
+                    int shift = (neighbor & 15) * 4;
+                    int bits = (int) (reached[neighbor >>> 4] >>> shift) & 15;
+                    if (bits != 0 && (bits >>> 2) - 1 != next % 3) {
+                        // reached before with another of the three estimates, keep the lower
+                        int other = estimate + ((bits >>> 2) - 1 - estimate % 3 + 3) % 3;
+                        if (other < next) {
+                            continue;
+                        }
+                    } else if (bits != 0) {
+                        // reached with this same estimate
+                        continue;
+                    }
+                    reached[neighbor >>> 4] = (reached[neighbor >>> 4] & ~(15L << shift))
+                            | (long) ((next % 3 + 1) << 2 | direction) << shift;
+                    waiting[next % 3].add(neighbor);
+                    remaining++;
+                }
+            }
+        }
+    }
+
+    private String walkBack(int end, long[] reached, int moves) {
+        String[] path = new String[moves];
+        int[] neighbors = new int[4];
+        int location = end;
+        for (int i = moves - 1; i >= 0; i--) {
+            int direction = (int) (reached[location >>> 4] >>> ((location & 15) * 4)) & 3;
+            path[i] = MOVES[direction];
+            // UP and DOWN, LEFT and RIGHT differ in the lowest bit
+            neighbors(location, neighbors);
+            location = neighbors[direction ^ 1];
+        }
+        return String.join("", path);
+    }
+
+    /**
+     * Finds the fewest Klingons on any path to Spock that enters no Khan or beam, flooding the
+     * locations reachable passing no Klingon, then those reachable passing one more, and so on,
+     * and from that whether the map is winnable and a beam can be reached (see the class
+     * comment).
+     */
+    private void fewestFights(int start, Analysis analysis) {
+        long[] visited = new long[words];
+        IntList current = new IntList();
+        IntList next = new IntList();
+        int[] neighbors = new int[4];
+        boolean energyFirst = get(energy, start);
+        boolean beamFirst = false;
+        boolean beamLater = false;
+        set(visited, start);
+        current.add(start);
+        for (int passed = 0; current.size > 0; passed++) {
+            // flood depth first, the order doesn't matter within a number of Klingons
+            while (current.size > 0) {
+                neighbors(current.values[--current.size], neighbors);
+                for (int direction = 0; direction < 4; direction++) {
+                    int neighbor = neighbors[direction];
+                    if (get(visited, neighbor)) {
+                        continue;
+                    }
+                    set(visited, neighbor);
+                    if (!get(special, neighbor)) {
+                        current.add(neighbor);
+                        if (passed == 0 && get(energy, neighbor)) {
+                            energyFirst = true;
+                        }
+                    } else if (get(win, neighbor)) {
+                        analysis.coresNeeded = passed;
+                        analysis.winnable = passed == 0 || energyFirst;
+                        analysis.beamReachable = !analysis.winnable && beamFirst;
+                        return;
+                    } else if (get(fight, neighbor)) {
+                        next.add(neighbor);
+                    } else if (get(beam, neighbor)) {
+                        beamFirst |= passed == 0;
+                        beamLater = true;
+                    }
+                }
+            }
+            IntList swap = current;
+            current = next;
+            next = swap;
+        }
+        analysis.beamReachable = energyFirst ? beamLater : beamFirst;
+    }
+
+    /**
+     * Finds the fewest moves to Spock under the phaser rules, by A* search over locations and
+     * energy cores held, 0 to maxCores, with a bitset for each number of cores of the locations
+     * done. The estimates are kept in three lists as in safePath, but a location and cores held
+     * are simply added again when reached with a lower estimate, and skipped when they come up
+     * again once done. Entering a Klingon needs a core and uses it, entering an energy location
+     * gives one; more than maxCores count as maxCores.
+     */
+    private void phaserSearch(int start, int maxCores, Analysis analysis) {
+        long[][] closed = new long[maxCores + 1][words];
+        IntList[] waiting = { new IntList(), new IntList(), new IntList() };
+        IntList[] waitingCores = { new IntList(), new IntList(), new IntList() };
+        int[] neighbors = new int[4];
+        // the start is entered when the game starts
+        int estimate = distance(start);
+        waiting[estimate % 3].add(start);
+        waitingCores[estimate % 3].add(get(energy, start) ? Math.min(1, maxCores) : 0);
+        for (int remaining = 1; remaining > 0; estimate++) {
+            IntList current = waiting[estimate % 3];
+            IntList currentCores = waitingCores[estimate % 3];
+            while (current.size > 0) {
+                int location = current.values[--current.size];
+                int cores = currentCores.values[--currentCores.size];
+                remaining--;
+                if (get(closed[cores], location)) {
+                    continue;
+                }
+                set(closed[cores], location);
+                if (get(win, location)) {
+                    analysis.winningMoves = estimate;
+                    return;
+                }
+                int moves = estimate - distance(location) + 1;
+                neighbors(location, neighbors);
+                for (int direction = 0; direction < 4; direction++) {
+                    int neighbor = neighbors[direction];
+                    int held = cores;
+                    if (get(special, neighbor)) {
+                        if (get(fight, neighbor) && cores > 0) {
+                            held--;
+                        } else if (!get(win, neighbor)) {
+                            continue;
+                        }
+                    } else if (get(energy, neighbor)) {
+                        held = Math.min(cores + 1, maxCores);
+                    }
+                    if (get(closed[held], neighbor)) {
+                        continue;
+                    }
+                    int next = moves + distance(neighbor);
+                    waiting[next % 3].add(neighbor);
+                    waitingCores[next % 3].add(held);
+                    remaining++;
+                }
+            }
+        }
+    }
+
+    /**
+     * A growable list of ints, for the locations waiting in the searches.
+     */
+    private static final class IntList {
+        int[] values = new int[64];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+
+    /**
+     * Describes an analysis in a few lines.
+     *
+     * @param name     The name of the map.
+     * @param analysis The analysis.
+     * @param showPath Whether to include the moves of the safe path.
+     * @return The lines, each ending with a line separator.
+     */
+    public static String report(String name, Analysis analysis, boolean showPath) {
+        String newline = System.lineSeparator();
+        StringBuilder out = new StringBuilder();
+        out.append(name).append(" from ").append(analysis.startRow).append(',')
+                .append(analysis.startColumn).append(':').append(newline);
+        out.append("  Spock locations: ").append(analysis.spocks).append(newline);
+        out.append("  Shortest safe path (no Khan, Klingons or beams): ")
+                .append(analysis.safePathLength < 0 ? "none" : analysis.safePathLength + " moves")
+                .append(newline);
+        if (showPath && analysis.safePath != null) {
+            out.append("  Safe path: ").append(analysis.safePath).append(newline);
+        }
+        out.append("  Fewest Klingons to pass (energy cores needed): ")
+                .append(analysis.coresNeeded < 0 ? "Spock can't be reached"
+                        : String.valueOf(analysis.coresNeeded))
+                .append(newline);
+        out.append("  Winnable without beams: ").append(!analysis.winnable ? "no"
+                : analysis.coresCapped ? "yes, holding more than the maximum cores"
+                        : "yes, in " + analysis.winningMoves + " moves")
+                .append(newline);
+        if (!analysis.winnable) {
+            out.append("  A beam can be reached: ").append(analysis.beamReachable ? "yes" : "no")
+                    .append(newline);
+        }
+        out.append("  Analyzed in ").append(analysis.elapsedNanos / 1000000).append(" ms")
+                .append(newline);
+        return out.toString();
+    }
+
+    /**
+     * Loads a map and analyzes it from each starting location in parallel.
+     *
+     * @param starts The starting locations, none for the map's own.
+     * @return The reports of the starting locations, or an error message.
+     */
+    private static String analyzeFile(String configurationFile, List<int[]> starts,
+            int maxCores, boolean showPath) {
+        int[] start = new int[] { 0, 0 };
+        World world;
+        try {
+            if (MapCompiler.isCompiled(configurationFile)) {
+                world = MapCompiler.load(configurationFile, start);
+            } else {
+                world = MappedConfigLoader.load(configurationFile, start);
+            }
+            if (world == null) {
+                return "Error, no map in file: " + configurationFile + System.lineSeparator();
+            }
+        } catch (IOException e) {
+            return "Error, unable to load file: " + configurationFile + System.lineSeparator();
+        } catch (IllegalArgumentException e) {
+            // such as a reference to an undeclared template or an unknown type
+            return "Error, bad map in file: " + configurationFile + ": " + e.getMessage()
+                    + System.lineSeparator();
+        }
+        Analyzer analyzer;
+        try {
+            analyzer = new Analyzer(world);
+        } catch (IllegalArgumentException e) {
+            return "Error, unable to analyze file: " + configurationFile + ": " + e.getMessage()
+                    + System.lineSeparator();
+        }
+        List<int[]> from = starts.isEmpty() ? List.of(start) : starts;
+        List<ForkJoinTask<Analysis>> analyses = new ArrayList<>();
+        for (int[] location : from) {
+            if (location[Config.ROW] >= world.rows()
+                    || location[Config.COLUMN] >= world.columns()) {
+                return "Error, " + location[Config.ROW] + "," + location[Config.COLUMN]
+                        + " is outside the map: " + configurationFile + System.lineSeparator();
+            }
+            analyses.add(ForkJoinTask.adapt(() -> analyzer.analyze(location[Config.ROW],
+                    location[Config.COLUMN], maxCores)));
+        }
+        ForkJoinTask.invokeAll(analyses);
+        StringBuilder out = new StringBuilder();
+        for (ForkJoinTask<Analysis> analysis : analyses) {
+            out.append(report(configurationFile, analysis.join(), showPath));
+        }
+        return out.toString();
+    }
+
+    /**
+     * Analyzes maps from the command line and prints the reports.
+     *
+     * @param args See the class comment.
+     */
+    public static void main(String[] args) {
+        List<String> configurationFiles = new ArrayList<>();
+        List<int[]> starts = new ArrayList<>();
+        int maxCores = DEFAULT_MAX_CORES;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean showPath = false;
+        for (int i = 0; i < args.length; ++i) {
+            if (args[i].equalsIgnoreCase("-c")) {
+                configurationFiles.add(args[++i]);
+            } else if (args[i].equalsIgnoreCase("-start")) {
+                int[] start = Adventure.parseCoordinates(args[++i]);
+                if (start == null) {
+                    System.out.println("Error, not a row,column: " + args[i]);
+                    return;
+                }
+                starts.add(start);
+            } else if (args[i].equalsIgnoreCase("-cores")) {
+                maxCores = Integer.parseInt(args[++i]);
+            } else if (args[i].equalsIgnoreCase("-threads")) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equalsIgnoreCase("-path")) {
+                showPath = true;
+            }
+        }
+        if (configurationFiles.isEmpty()) {
+            configurationFiles.add("src/StarTrek.advcfg");
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        List<ForkJoinTask<String>> reports = new ArrayList<>();
+        int cores = maxCores;
+        boolean path = showPath;
+        for (String configurationFile : configurationFiles) {
+            Callable<String> task = () -> analyzeFile(configurationFile, starts, cores, path);
+            reports.add(pool.submit(task));
+        }
+        for (ForkJoinTask<String> report : reports) {
+            System.out.print(report.join());
+        }
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,93 @@
+import java.util.Random;
+
+/**
+ * A World that is only a view of a String[][][] map owned by the caller, for Adventure's array
+ * based methods. It keeps nothing derived from the map: the type of a location is resolved from
+ * its fields/attributes, and its neighbors' nearby text looked at, on every call, and empty
+ * locations are found by scanning the map. So the map can be changed directly, as it always
+ * could, and the view always sees it as it is.
+ *
+ * Picking an empty location scans the whole map, as the original list based pickRandomLocation
+ * did, and picks the same location for the same random number. Games that beam often should load
+ * a World, whose storage keeps an index of its empty locations, instead.
+ */
+public class ArrayWorld extends World {
+
+    // the built in entity rules, which are never changed, shared by every view
+    private static final EntityTypes BUILT_IN = new EntityTypes();
+
+    private final String[][][] map;
+
+    /**
+     * @param map The map, indexes are row, column, fields/attributes. It isn't copied.
+     */
+    public ArrayWorld(String[][][] map) {
+        super(map.length, map.length == 0 ? 0 : map[0].length, BUILT_IN);
+        this.map = map;
+    }
+
+    @Override
+    public String[] get(int row, int column) {
+        return map[row][column];
+    }
+
+    @Override
+    public int type(int row, int column) {
+        return types.resolve(map[row][column]);
+    }
+
+    @Override
+    public void set(int row, int column, String[] fields) {
+        map[row][column] = fields;
+    }
+
+    @Override
+    public long populated() {
+        long populated = 0;
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                if (map[row][column] != null) {
+                    populated++;
+                }
+            }
+        }
+        return populated;
+    }
+
+    @Override
+    public long pickFree(Random rand) {
+        long free = (long) rows * columns - populated();
+        if (free == 0) {
+            return Location.NONE;
+        }
+        // the picked empty location in row-major order, like the original list of them
+        int pick = rand.nextInt((int) free);
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                if (map[row][column] == null && pick-- == 0) {
+                    return Location.pack(row, column);
+                }
+            }
+        }
+        return Location.NONE;
+    }
+
+    @Override
+    public void forEachPopulated(LocationVisitor visitor) {
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                if (map[row][column] != null) {
+                    visitor.visit(row, column, map[row][column]);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The map itself.
+     */
+    @Override
+    public String[][][] toArray() {
+        return map;
+    }
+}
@@ -0,0 +1,217 @@
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Keeps the sounds used by the game decoded in memory and plays them through a single
+ * AudioMixer, instead of decoding the .wav file and opening a new Clip (that was never closed) on
+ * every call.
+ *
+ * Each sound file is decoded once, either up front by preload or on its first play, and converted
+ * to the mixer's format. The mixer is opened by preload or the first play, with one line for
+ * every sound, so sounds started back to back overlap without needing more lines. Run with
+ * -Dadventure.nullaudio=true to mix into a null sink instead (see AudioMixer).
+ *
+ * Starting the audio system loads much of javax.sound and can take a while, so all of this
+ * happens on a thread of its own: preload and play return at once, and the game never waits for
+ * the audio system to start or a sound to be decoded. Sounds are played in the order play is
+ * called.
+ *
+ * Every play returns a future that completes when the sound has been played, so callers can wait
+ * exactly as long as the sound takes.
+ *
+ * If the audio system can't provide a line (for example on a machine without audio hardware),
+ * the error is printed once, no sound is decoded, and later plays do nothing. Plays queued before
+ * that was known complete as soon as the audio thread gets to them, and plays after it, like
+ * plays while Config.SOUND_ON is false or after close, return an already completed future, so
+ * nothing waits for a sound that can't be heard.
+ */
+public class AudioCache {
+
+    // Returned for plays that don't make a sound
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
+    // Decodes and plays the sounds, off the game's thread
+    private static final ExecutorService audio = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "audio");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Decoded sounds by file name, a missing or undecodable file maps to null
+    private static final HashMap<String, short[]> sounds = new HashMap<>();
+    private static AudioMixer mixer;
+    // false once opening the mixer failed, read by play without the lock
+    private static volatile boolean audioAvailable = true;
+
+    private static long hits = 0;
+    private static long misses = 0;
+
+    /**
+     * Starts the audio system and decodes the sound files in the background, so that their first
+     * play doesn't have to. Returns at once. If no line can be opened nothing is decoded.
+     *
+     * @param wavFileNames Names of the .wav files to decode.
+     */
+    public static void preload(String... wavFileNames) {
+        if (!Config.SOUND_ON) {
+            return;
+        }
+        String[] names = wavFileNames.clone();
+        try {
+            audio.execute(() -> {
+                synchronized (AudioCache.class) {
+                    if (!open()) {
+                        return;
+                    }
+                    for (String wavFileName : names) {
+                        sound(wavFileName);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // closed
+        }
+    }
+
+    /**
+     * Plays a sound, decoding it if this is its first use.
+     *
+     * @param wavFileName Name of the .wav file to play.
+     * @return A future completed when the sound stops, already completed if the sound is muted.
+     *         It also completes if the file doesn't exist or can't be played.
+     */
+    public static CompletableFuture<Void> play(String wavFileName) {
+        return play(wavFileName, AudioMixer.NORMAL);
+    }
+
+    /**
+     * Plays a sound, decoding it if this is its first use. Returns at once, the sound starts on
+     * the audio thread.
+     *
+     * @param wavFileName Name of the .wav file to play.
+     * @param priority    The sound's priority if every voice of the mixer is playing, such as
+     *                    AudioMixer.HIGH.
+     * @return A future completed when the sound stops, already completed if the sound is muted.
+     *         It also completes if the file doesn't exist or can't be played.
+     */
+    public static CompletableFuture<Void> play(String wavFileName, int priority) {
+        if (!Config.SOUND_ON || !audioAvailable) {
+            return DONE;
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> start(wavFileName, priority), audio)
+                    .thenCompose(sound -> sound);
+        } catch (RejectedExecutionException e) {
+            // closed
+            return DONE;
+        }
+    }
+
+    /**
+     * Starts playing a sound on the mixer, on the audio thread.
+     */
+    private static synchronized CompletableFuture<Void> start(String wavFileName, int priority) {
+        if (!open()) {
+            return DONE;
+        }
+        short[] sound = sound(wavFileName);
+        if (sound == null) {
+            return DONE;
+        }
+        return mixer.play(sound, priority);
+    }
+
+    /**
+     * Opens the mixer if it isn't open yet.
+     *
+     * @return false if the audio system can't provide a line.
+     */
+    private static boolean open() {
+        if (mixer == null && audioAvailable) {
+            try {
+                mixer = AudioMixer.open(Config.NULL_AUDIO);
+            } catch (Exception e) {
+                e.printStackTrace();
+                audioAvailable = false;
+            }
+        }
+        return mixer != null;
+    }
+
+    /**
+     * Returns the decoded sound, decoding the file if it hasn't been already.
+     */
+    private static short[] sound(String wavFileName) {
+        if (sounds.containsKey(wavFileName)) {
+            hits++;
+            return sounds.get(wavFileName);
+        }
+        misses++;
+        short[] sound = null;
+        File file = new File(wavFileName);
+        if (file.exists()) {
+            try (AudioInputStream in = AudioSystem.getAudioInputStream(file)) {
+                ByteArrayOutputStream data = new ByteArrayOutputStream();
+                in.transferTo(data);
+                sound = AudioMixer.convert(in.getFormat(), data.toByteArray());
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        sounds.put(wavFileName, sound);
+        return sound;
+    }
+
+    /**
+     * Closes the mixer, once it has played what it has buffered, and stops the audio thread.
+     * Gives up after Config.MAX_SOUND_WAIT milliseconds in case the audio system hangs.
+     */
+    public static void close() {
+        try {
+            audio.submit(() -> {
+                synchronized (AudioCache.class) {
+                    if (mixer != null) {
+                        mixer.close();
+                        mixer = null;
+                    }
+                }
+            }).get(Config.MAX_SOUND_WAIT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException | RejectedExecutionException e) {
+            // the audio thread is a daemon, it won't keep the program running
+        }
+        audio.shutdown();
+    }
+
+    /**
+     * @return The number of times a sound was found already decoded.
+     */
+    public static synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * @return The number of times a sound file had to be decoded (or found missing).
+     */
+    public static synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     * @return The mixer, or null if the audio thread hasn't opened it yet.
+     */
+    public static synchronized AudioMixer mixer() {
+        return mixer;
+    }
+}
@@ -0,0 +1,426 @@
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays any number of overlapping sounds through a single SourceDataLine, so that sounds started
+ * back to back (such as the alert and phaser of a fight) don't each need a line of the system's
+ * mixer, which runs out of them.
+ *
+ * Sounds are played from memory as voices, in the mixer's FORMAT (see convert). A thread of its
+ * own sums the playing voices a period of PERIOD_FRAMES frames at a time into a fixed ring buffer
+ * of RING_PERIODS periods, which is also the size of the line's buffer, and writes each period to
+ * the line. At most MAX_VOICES play at once: a sound started when they are all busy takes the
+ * place of the oldest voice with the lowest priority, if that is no higher than its own, and is
+ * dropped otherwise. While nothing plays the thread waits, and the line runs dry.
+ *
+ * Start latency is the time from play to the sound's first period being written, which doesn't
+ * include the up to RING_PERIODS periods buffered in the line. An underrun is counted when the
+ * line's buffer was found empty, or the thread woke up too late to write in time, while a sound
+ * was playing.
+ *
+ * A mixer opened without a line is a null sink: it mixes the same way, and takes each period at
+ * the rate the line would, so sounds take as long as they would to play, on machines without
+ * audio hardware too.
+ */
+public class AudioMixer implements Closeable {
+
+    /**
+     * The format sounds are mixed in and played: 22050 Hz, 16-bit signed little-endian, mono.
+     */
+    public static final AudioFormat FORMAT = new AudioFormat(22050, 16, 1, true, false);
+
+    /**
+     * The number of frames mixed at once, about 12 ms.
+     */
+    public static final int PERIOD_FRAMES = 256;
+
+    /**
+     * The number of periods in the ring buffer.
+     */
+    public static final int RING_PERIODS = 4;
+
+    /**
+     * The most sounds playing at once.
+     */
+    public static final int MAX_VOICES = 8;
+
+    /**
+     * Priorities of sounds: a sound only takes the voice of a sound of the same or a lower
+     * priority.
+     */
+    public static final int LOW = 0;
+    public static final int NORMAL = 1;
+    public static final int HIGH = 2;
+
+    private static final int FRAME_BYTES = 2;
+    private static final long PERIOD_NANOS = TimeUnit.SECONDS.toNanos(PERIOD_FRAMES)
+            / (long) FORMAT.getSampleRate();
+
+    /**
+     * A sound to play, and where it has got to.
+     */
+    private static final class Voice {
+        final short[] samples;
+        final int priority;
+        final long queued;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        int position;
+        long started;
+
+        Voice(short[] samples, int priority) {
+            this.samples = samples;
+            this.priority = priority;
+            this.queued = System.nanoTime();
+        }
+    }
+
+    // null for a null sink
+    private final SourceDataLine line;
+    private final Thread thread;
+    private final ConcurrentLinkedQueue<Voice> queue = new ConcurrentLinkedQueue<>();
+    private volatile boolean closed;
+
+    // only used by the mixing thread
+    private final Voice[] voices = new Voice[MAX_VOICES];
+    private final int[] mix = new int[PERIOD_FRAMES];
+    private final byte[] ring = new byte[PERIOD_FRAMES * FRAME_BYTES * RING_PERIODS];
+    private int ringOffset;
+    private long starts;
+
+    // read by other threads while holding this
+    private final LatencyHistogram startLatency = new LatencyHistogram();
+    private long played;
+    private long dropped;
+    private long stolen;
+    private long underruns;
+
+    /**
+     * Opens a mixer and starts its thread.
+     *
+     * @param nullSink true to mix without a line, see the class comment.
+     * @return The mixer.
+     * @throws LineUnavailableException If there is no line to play FORMAT on, such as on a
+     *                                  machine without audio hardware.
+     */
+    public static AudioMixer open(boolean nullSink) throws LineUnavailableException {
+        if (nullSink) {
+            return new AudioMixer(null);
+        }
+        SourceDataLine line = AudioSystem.getSourceDataLine(FORMAT);
+        line.open(FORMAT, PERIOD_FRAMES * FRAME_BYTES * RING_PERIODS);
+        line.start();
+        return new AudioMixer(line);
+    }
+
+    private AudioMixer(SourceDataLine line) {
+        this.line = line;
+        this.thread = new Thread(this::run, "audio-mixer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return true if this mixer has no line, see the class comment.
+     */
+    public boolean isNullSink() {
+        return line == null;
+    }
+
+    /**
+     * Starts playing a sound.
+     *
+     * @param samples  The sound in FORMAT, see convert. It must not be changed while it plays.
+     * @param priority LOW, NORMAL or HIGH.
+     * @return A future completed once the whole sound has been written, or it was dropped or
+     *         replaced by another sound, already completed if the mixer is closed.
+     */
+    public CompletableFuture<Void> play(short[] samples, int priority) {
+        Voice voice = new Voice(samples, priority);
+        if (closed || samples.length == 0) {
+            voice.done.complete(null);
+            return voice.done;
+        }
+        queue.add(voice);
+        LockSupport.unpark(thread);
+        return voice.done;
+    }
+
+    /**
+     * Mixes and writes periods until closed, waiting while there is nothing to play.
+     */
+    private void run() {
+        long deadline = 0;
+        boolean playing = false;
+        while (!closed) {
+            if (!admit() && !playing) {
+                LockSupport.park(this);
+                continue;
+            }
+            long now = System.nanoTime();
+            if (!playing) {
+                // starting after a wait, the line has run dry on purpose
+                deadline = now;
+            } else if (line == null ? now > deadline + PERIOD_NANOS
+                    : line.available() == line.getBufferSize()) {
+                synchronized (this) {
+                    underruns++;
+                }
+            }
+            playing = mix();
+            write();
+            finish();
+            if (line == null) {
+                deadline += PERIOD_NANOS;
+                long wait = deadline - System.nanoTime();
+                if (wait < -PERIOD_NANOS * RING_PERIODS) {
+                    // too far behind to catch up, start again from now
+                    deadline = System.nanoTime();
+                }
+                // play wakes the thread too
+                while (wait > 0 && !closed) {
+                    LockSupport.parkNanos(this, wait);
+                    wait = deadline - System.nanoTime();
+                }
+            }
+        }
+        for (int i = 0; i < MAX_VOICES; i++) {
+            if (voices[i] != null) {
+                voices[i].done.complete(null);
+                voices[i] = null;
+            }
+        }
+        Voice voice;
+        while ((voice = queue.poll()) != null) {
+            voice.done.complete(null);
+        }
+    }
+
+    /**
+     * Gives each queued sound a voice.
+     *
+     * @return true if any sound is playing.
+     */
+    private boolean admit() {
+        Voice voice;
+        while ((voice = queue.poll()) != null) {
+            int slot = -1;
+            for (int i = 0; i < MAX_VOICES; i++) {
+                if (voices[i] == null) {
+                    slot = i;
+                    break;
+                }
+                boolean better = slot == -1 || voices[i].priority < voices[slot].priority
+                        || (voices[i].priority == voices[slot].priority
+                                && voices[i].started < voices[slot].started);
+                if (better) {
+                    slot = i;
+                }
+            }
+            if (voices[slot] != null) {
+                if (voices[slot].priority > voice.priority) {
+                    voice.done.complete(null);
+                    synchronized (this) {
+                        dropped++;
+                    }
+                    continue;
+                }
+                voices[slot].done.complete(null);
+                synchronized (this) {
+                    stolen++;
+                }
+            }
+            voice.started = ++starts;
+            voices[slot] = voice;
+        }
+        for (int i = 0; i < MAX_VOICES; i++) {
+            if (voices[i] != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sums a period of the playing voices into the next period of the ring.
+     *
+     * @return true if any voice has more to play after this period.
+     */
+    private boolean mix() {
+        Arrays.fill(mix, 0);
+        boolean more = false;
+        for (int i = 0; i < MAX_VOICES; i++) {
+            Voice voice = voices[i];
+            if (voice == null) {
+                continue;
+            }
+            int frames = Math.min(PERIOD_FRAMES, voice.samples.length - voice.position);
+            for (int f = 0; f < frames; f++) {
+                mix[f] += voice.samples[voice.position + f];
+            }
+            voice.position += frames;
+            more |= voice.position < voice.samples.length;
+        }
+        for (int f = 0, b = ringOffset; f < PERIOD_FRAMES; f++, b += FRAME_BYTES) {
+            int sample = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, mix[f]));
+            ring[b] = (byte) sample;
+            ring[b + 1] = (byte) (sample >> 8);
+        }
+        return more;
+    }
+
+    /**
+     * Writes the period just mixed to the line, waiting for room in its buffer.
+     */
+    private void write() {
+        if (line != null) {
+            line.write(ring, ringOffset, PERIOD_FRAMES * FRAME_BYTES);
+        }
+        ringOffset = (ringOffset + PERIOD_FRAMES * FRAME_BYTES) % ring.length;
+    }
+
+    /**
+     * Records the start latency of the voices that started in the period just written, and frees
+     * those that have been written to the end.
+     */
+    private void finish() {
+        long now = System.nanoTime();
+        synchronized (this) {
+            for (int i = 0; i < MAX_VOICES; i++) {
+                Voice voice = voices[i];
+                if (voice == null) {
+                    continue;
+                }
+                if (voice.position <= PERIOD_FRAMES) {
+                    startLatency.record(now - voice.queued);
+                }
+                if (voice.position == voice.samples.length) {
+                    voices[i] = null;
+                    played++;
+                    voice.done.complete(null);
+                }
+            }
+        }
+    }
+
+    /**
+     * Converts a decoded sound to FORMAT: 8 or 16-bit PCM, signed or unsigned, of any sample rate
+     * and number of channels. Channels are averaged and the rate is converted by linear
+     * interpolation.
+     *
+     * @param format The format of the sound.
+     * @param data   The sound, in that format.
+     * @return The sound in FORMAT.
+     * @throws IllegalArgumentException If the format isn't 8 or 16-bit PCM.
+     */
+    public static short[] convert(AudioFormat format, byte[] data) {
+        AudioFormat.Encoding encoding = format.getEncoding();
+        int bits = format.getSampleSizeInBits();
+        boolean signed = encoding.equals(AudioFormat.Encoding.PCM_SIGNED);
+        if ((!signed && !encoding.equals(AudioFormat.Encoding.PCM_UNSIGNED))
+                || (bits != 8 && bits != 16)) {
+            throw new IllegalArgumentException("Unsupported sound format: " + format);
+        }
+        int channels = format.getChannels();
+        int sampleBytes = bits / 8;
+        int frameBytes = sampleBytes * channels;
+        int frames = data.length / frameBytes;
+        short[] source = new short[frames];
+        for (int f = 0; f < frames; f++) {
+            int sum = 0;
+            for (int c = 0; c < channels; c++) {
+                int at = f * frameBytes + c * sampleBytes;
+                int sample;
+                if (bits == 8) {
+                    sample = signed ? data[at] << 8 : ((data[at] & 0xFF) - 128) << 8;
+                } else {
+                    int low = format.isBigEndian() ? data[at + 1] : data[at];
+                    int high = format.isBigEndian() ? data[at] : data[at + 1];
+                    sample = (high << 8) | (low & 0xFF);
+                    if (!signed) {
+                        sample = (sample & 0xFFFF) - 32768;
+                    }
+                }
+                sum += sample;
+            }
+            source[f] = (short) (sum / channels);
+        }
+        double step = format.getSampleRate() / FORMAT.getSampleRate();
+        if (step == 1 || frames == 0) {
+            return source;
+        }
+        short[] samples = new short[(int) ((frames - 1) / step) + 1];
+        for (int i = 0; i < samples.length; i++) {
+            double at = i * step;
+            int before = (int) at;
+            int after = Math.min(before + 1, frames - 1);
+            double weight = at - before;
+            samples[i] = (short) Math.round(source[before] * (1 - weight)
+                    + source[after] * weight);
+        }
+        return samples;
+    }
+
+    /**
+     * @return The number of sounds played to the end.
+     */
+    public synchronized long played() {
+        return played;
+    }
+
+    /**
+     * @return The number of sounds dropped because every voice was playing a sound of a higher
+     *         priority.
+     */
+    public synchronized long dropped() {
+        return dropped;
+    }
+
+    /**
+     * @return The number of sounds cut off to make room for another.
+     */
+    public synchronized long stolen() {
+        return stolen;
+    }
+
+    /**
+     * @return The number of underruns, see the class comment.
+     */
+    public synchronized long underruns() {
+        return underruns;
+    }
+
+    /**
+     * @param fraction The fraction of sounds, such as 0.99.
+     * @return The start latency in nanoseconds that the fraction of sounds started within.
+     */
+    public synchronized long startLatency(double fraction) {
+        return startLatency.percentile(fraction);
+    }
+
+    /**
+     * Stops mixing, and closes the line once it has played what it has buffered. Sounds not yet
+     * played to the end are completed.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.NANOSECONDS.toMillis(PERIOD_NANOS * RING_PERIODS) + 1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (line != null) {
+            line.drain();
+            line.close();
+        }
+    }
+}
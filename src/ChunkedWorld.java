@@ -0,0 +1,354 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * A practically infinite World, generated as it is explored. The map is Integer.MAX_VALUE rows
+ * and columns (rounded down to whole chunks), wrapping at the edges like any other map, and is
+ * split into chunks of CHUNK_SIZE x CHUNK_SIZE locations. A chunk is generated the first time one
+ * of its locations is looked at, from the seed and the chunk's coordinates only, so it comes out
+ * the same every time.
+ *
+ * The hand-authored map from the .advcfg sits at the top left corner and overrides whatever would
+ * be generated there, empty locations included, so the starting area plays as it was written.
+ * Generated locations copy the locations of the authored map: each distinct name other than
+ * "start" appears with the same density as it has in the authored map, with the fields/attributes
+ * of its first appearance, which every generated location of that name shares.
+ *
+ * Generated chunks are kept in a least recently used cache of a fixed number of chunks, and a
+ * chunk that was evicted is generated again when it is next looked at, so memory stays flat however
+ * far the player travels. A chunk stores one short per location, an index into the shared
+ * templates. Locations set after generation are kept per chunk, in an array allocated on the
+ * chunk's first set, which outlives the chunk in the cache: a chunk generated again gets its
+ * edits back, so a set is never lost, as in any other World. Memory grows with the chunks that
+ * were set, not with the distance travelled.
+ *
+ * An infinite map can't be listed (see isListable), so forEachPopulated and toArray aren't
+ * supported, and populated is the expected number of populated locations. Draw it with a
+ * MapRenderer viewport.
+ */
+public class ChunkedWorld extends World {
+
+    /**
+     * The number of rows and columns of a chunk.
+     */
+    public static final int CHUNK_SIZE = 32;
+
+    /**
+     * The number of chunks cached by default, 2MB of generated chunks.
+     */
+    public static final int DEFAULT_CACHED_CHUNKS = 1024;
+
+    private static final int SIZE = Integer.MAX_VALUE / CHUNK_SIZE * CHUNK_SIZE;
+    // tries at picking an empty location before giving up, for maps that are (nearly) full
+    private static final int MAX_PICKS = 1000;
+
+    private final World authored;
+    private final long seed;
+    private final int cachedChunks;
+
+    // what generated locations look like, index 0 is an empty location
+    private final String[][] templateFields;
+    private final int[] templateTypes;
+    // the chance of each template, cumulative, for template 1 onwards
+    private final double[] cumulativeDensity;
+
+    private final LongObjectMap<Chunk> chunks;
+    // the edits of every chunk with a location set, kept while the chunk is evicted
+    private final LongObjectMap<Cell[]> edits = new LongObjectMap<>(16);
+    // the cache in least recently used order, newest first
+    private Chunk newest;
+    private Chunk oldest;
+    private long generated;
+
+    /**
+     * The locations of a generated chunk, and its place in the cache.
+     */
+    private static final class Chunk {
+        final long key;
+        // the template of each location, row-major
+        final short[] templates = new short[CHUNK_SIZE * CHUNK_SIZE];
+        // the locations set after generation, in the same order, null until one is set, see edits
+        Cell[] edits;
+        Chunk newer;
+        Chunk older;
+
+        Chunk(long key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * A location set after generation: its fields/attributes, null if emptied, and their type.
+     */
+    private static final class Cell {
+        final String[] fields;
+        final int type;
+
+        Cell(String[] fields, int type) {
+            this.fields = fields;
+            this.type = type;
+        }
+    }
+
+    /**
+     * @param authored     The hand-authored map, placed at the top left corner. It shares its
+     *                     rule table with this world, and must be listable.
+     * @param seed         The seed that the chunks are generated from.
+     * @param cachedChunks The most chunks to keep generated at once, at least 1.
+     * @throws IllegalArgumentException If cachedChunks is less than 1 or the authored map can't
+     *                                  be listed.
+     * @throws IllegalStateException    If the authored map has too many distinct names to store.
+     */
+    public ChunkedWorld(World authored, long seed, int cachedChunks) {
+        super(SIZE, SIZE, authored.types());
+        if (cachedChunks < 1) {
+            throw new IllegalArgumentException("At least one chunk must be cached");
+        }
+        requireListable(authored, "generated around");
+        this.authored = authored;
+        this.seed = seed;
+        this.cachedChunks = cachedChunks;
+        this.chunks = new LongObjectMap<>(cachedChunks);
+
+        // the templates, in the order their names first appear
+        HashMap<String, Integer> byName = new HashMap<>();
+        ArrayList<String[]> fields = new ArrayList<>();
+        ArrayList<long[]> counts = new ArrayList<>();
+        fields.add(null);
+        counts.add(new long[1]);
+        authored.forEachPopulated((row, column, cell) -> {
+            String name = cell[Config.NAME];
+            if (name.equalsIgnoreCase(Config.NAME_START)) {
+                return;
+            }
+            Integer template = byName.get(name);
+            if (template == null) {
+                template = fields.size();
+                byName.put(name, template);
+                fields.add(cell);
+                counts.add(new long[1]);
+            }
+            counts.get(template)[0]++;
+        });
+        if (fields.size() > Short.MAX_VALUE) {
+            throw new IllegalStateException("Too many distinct names to generate");
+        }
+        templateFields = fields.toArray(new String[0][]);
+        templateTypes = new int[templateFields.length];
+        cumulativeDensity = new double[templateFields.length];
+        double area = (double) authored.rows() * authored.columns();
+        double total = 0;
+        for (int t = 1; t < templateFields.length; t++) {
+            templateTypes[t] = types.resolve(templateFields[t]);
+            total += counts.get(t)[0] / area;
+            cumulativeDensity[t] = total;
+        }
+    }
+
+    /**
+     * @return The number of chunks generated so far, counting those generated again.
+     */
+    public long generatedChunks() {
+        return generated;
+    }
+
+    /**
+     * @return The number of chunks currently cached.
+     */
+    public int cachedChunks() {
+        return chunks.size();
+    }
+
+    private boolean isAuthored(int row, int column) {
+        return row < authored.rows() && column < authored.columns();
+    }
+
+    @Override
+    public String[] get(int row, int column) {
+        if (isAuthored(row, column)) {
+            return authored.get(row, column);
+        }
+        Chunk chunk = chunk(row, column);
+        int index = index(row, column);
+        if (chunk.edits != null && chunk.edits[index] != null) {
+            return chunk.edits[index].fields;
+        }
+        return templateFields[chunk.templates[index]];
+    }
+
+    @Override
+    public int type(int row, int column) {
+        if (isAuthored(row, column)) {
+            return authored.type(row, column);
+        }
+        Chunk chunk = chunk(row, column);
+        int index = index(row, column);
+        if (chunk.edits != null && chunk.edits[index] != null) {
+            return chunk.edits[index].type;
+        }
+        return templateTypes[chunk.templates[index]];
+    }
+
+    /**
+     * @return The chunk of a generated location.
+     */
+    private Chunk chunk(int row, int column) {
+        return chunk(Location.pack(row / CHUNK_SIZE, column / CHUNK_SIZE));
+    }
+
+    /**
+     * @return The index of a location in its chunk's arrays.
+     */
+    private static int index(int row, int column) {
+        return (row % CHUNK_SIZE) * CHUNK_SIZE + column % CHUNK_SIZE;
+    }
+
+    /**
+     * Finds a chunk in the cache, generating it if it isn't there, and makes it the most
+     * recently used.
+     */
+    private Chunk chunk(long key) {
+        if (newest != null && newest.key == key) {
+            return newest;
+        }
+        Chunk chunk = chunks.get(key);
+        if (chunk == null) {
+            chunk = generate(key);
+            chunks.put(key, chunk);
+            if (chunks.size() > cachedChunks) {
+                Chunk evicted = oldest;
+                unlink(evicted);
+                chunks.remove(evicted.key);
+            }
+        } else {
+            unlink(chunk);
+        }
+        chunk.older = newest;
+        if (newest != null) {
+            newest.newer = chunk;
+        }
+        newest = chunk;
+        if (oldest == null) {
+            oldest = chunk;
+        }
+        return chunk;
+    }
+
+    private void unlink(Chunk chunk) {
+        if (chunk.newer != null) {
+            chunk.newer.older = chunk.older;
+        } else {
+            newest = chunk.older;
+        }
+        if (chunk.older != null) {
+            chunk.older.newer = chunk.newer;
+        } else {
+            oldest = chunk.newer;
+        }
+        chunk.newer = null;
+        chunk.older = null;
+    }
+
+    /**
+     * Generates a chunk from the seed and its coordinates alone, and gives it back the locations
+     * set in it before it was evicted.
+     */
+    private Chunk generate(long key) {
+        generated++;
+        Chunk chunk = new Chunk(key);
+        chunk.edits = edits.get(key);
+        Random rand = new GameRandom(mix(seed, key));
+        int last = cumulativeDensity.length - 1;
+        for (int i = 0; i < chunk.templates.length; i++) {
+            double draw = rand.nextDouble();
+            if (last == 0 || draw >= cumulativeDensity[last]) {
+                continue;
+            }
+            int template = 1;
+            while (draw >= cumulativeDensity[template]) {
+                template++;
+            }
+            chunk.templates[i] = (short) template;
+        }
+        return chunk;
+    }
+
+    /**
+     * Mixes the seed and a chunk's coordinates into the seed of the chunk, so that neighboring
+     * chunks don't get related seeds (the finalizer of SplitMix64).
+     */
+    private static long mix(long seed, long key) {
+        long h = seed + key * 0x9E3779B97F4A7C15L;
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+
+    @Override
+    public void set(int row, int column, String[] fields) {
+        checkBounds(row, column);
+        if (isAuthored(row, column)) {
+            authored.set(row, column, fields);
+            return;
+        }
+        Chunk chunk = chunk(row, column);
+        if (chunk.edits == null) {
+            chunk.edits = new Cell[CHUNK_SIZE * CHUNK_SIZE];
+            edits.put(chunk.key, chunk.edits);
+        }
+        chunk.edits[index(row, column)] = new Cell(fields, fields == null ? EntityTypes.EMPTY
+                : types.resolve(fields));
+    }
+
+    /**
+     * @return The expected number of populated locations: those of the authored map, and the
+     *         generated density over the rest of the map.
+     */
+    @Override
+    public long populated() {
+        double area = (double) rows * columns - (double) authored.rows() * authored.columns();
+        return authored.populated()
+                + (long) (area * cumulativeDensity[cumulativeDensity.length - 1]);
+    }
+
+    /**
+     * Picks random locations anywhere in the map until an empty one is found, giving up after
+     * MAX_PICKS tries, which only happens when the authored map is (nearly) full.
+     */
+    @Override
+    public long pickFree(Random rand) {
+        for (int i = 0; i < MAX_PICKS; i++) {
+            int row = rand.nextInt(rows);
+            int column = rand.nextInt(columns);
+            if (get(row, column) == null) {
+                return Location.pack(row, column);
+            }
+        }
+        return Location.NONE;
+    }
+
+    /**
+     * @return false, an infinite map can't be listed.
+     */
+    @Override
+    public boolean isListable() {
+        return false;
+    }
+
+    /**
+     * @throws UnsupportedOperationException Always, an infinite map can't be listed.
+     */
+    @Override
+    public void forEachPopulated(LocationVisitor visitor) {
+        throw new UnsupportedOperationException("An infinite map can't be listed");
+    }
+
+    /**
+     * @throws UnsupportedOperationException Always, an infinite map can't be listed.
+     */
+    @Override
+    public String[][][] toArray() {
+        throw new UnsupportedOperationException("An infinite map can't be listed");
+    }
+}
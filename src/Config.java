@@ -33,6 +33,8 @@ public class Config {
 			+ "core disappeared...";
 	public static final String NEARBY_NULL = "You find yourself in a lonely, deserted corner of "
 			+ "this strange alien planet.";
+	// Shown when a game switches to a new version of the map, see MapWatcher
+	public static final String MAP_RELOADED = "Starfleet has sent you updated star charts.";
 
 	// Variable storing the count for collected energy cores during gameplay
 	public static int ENERGY_CORES = 0;
@@ -48,6 +50,12 @@ public class Config {
 	public static final String QUIT = "q";
 	public static final String DISPLAY_CORES = "e";
 
+	/**
+	 * Commands of the console game's -snapshots option, which saves and restores the game.
+	 */
+	public static final String SAVE = "save";
+	public static final String RESTORE = "restore";
+
 	/**
 	 * Stores filenames for sounds upon entering map locations
 	 */
@@ -59,6 +67,27 @@ public class Config {
 	public static final String SOUND_KLINGON = "src/sounds/klingon.wav";
 	public static final String SOUND_PHASER = "src/sounds/phaser.wav";
 	public static final String SOUND_ALERT = "src/sounds/alert.wav";
+
+	// Whether sounds are played, turned off with the -mute command-line option
+	public static boolean SOUND_ON = true;
+
+	// Whether sounds are mixed into a null sink instead of an audio line, for machines without
+	// audio hardware, see AudioMixer. Turned on with -Dadventure.nullaudio=true
+	public static final boolean NULL_AUDIO = Boolean.getBoolean("adventure.nullaudio");
+
+	// Whether turn latencies and event counts are recorded, see Metrics. Turned on with
+	// -Dadventure.metrics=true; final so that the recording compiles away when it is off
+	public static final boolean METRICS = Boolean.getBoolean("adventure.metrics");
+
+	// How often (milliseconds) metrics are written to the file given with -metrics
+	public static final long METRICS_PERIOD = 10000;
+
+	// The longest time (milliseconds) to wait for an end of game sound to finish
+	public static final long MAX_SOUND_WAIT = 10000;
+
+	// Every sound above, so they can all be decoded when the game starts
+	public static final String[] SOUNDS = { SOUND_INTRO, SOUND_KHAN, SOUND_ENERGY, SOUND_SPOCK,
+			SOUND_BEAM, SOUND_KLINGON, SOUND_PHASER, SOUND_ALERT };
 }
 
 /*
@@ -91,6 +120,11 @@ Each line starting with a coordinate (row,colum) gives the field/attribute value
 The first set of integer coordinates at the beginning of a line in this file (e.g., 8,8/size/...) is the overall
 size (number of rows and number of columns) of the map to be used to create the internal map array.
 The line with the 'start' name (e.g., 0,4/start/...) is the starting location of the player.
+A line starting with 'type' instead of coordinates (e.g., type/gorn/lose/src/sounds/alert.wav/G/) defines
+what entering a thing with that name does, its sound and its writeMap icon (see EntityTypes.java).
+A line starting with 'template' (e.g., template/k/klingon/Watch out!/lose/You hear Klingons.../) declares the
+fields of a thing once, and a location can then give just '@k' as its name (e.g., 0,7/@k/), with any fields after
+it replacing the template's (see EntityTemplates.java).
 
 Coordinates/Name/Enter Text/Enter Result/Nearby Text/
 8,8/size/This is the size of the map///
@@ -130,14 +164,14 @@ essentially the same as in "wumpus", with Star Trek-based names and description
 - - - - ~ - - - 
 - - ! - - - . ~ 
 
-	Character Key (as found in writeMap method):
-		char beam = '~';
-		char khan = 'K';
-		char spock = 'S';
-		char klingon = '!';
-		char playerIcon = 'x';
-		char energy = '.';
-		char empty = '-';
+	Character Key (as found in the EntityTypes built in rules and the writeMap method):
+		beam = '~'
+		khan = 'K'
+		spock = 'S'
+		klingon = '!'
+		playerIcon = 'x'
+		energy = '.'
+		empty = '-'
 		
 
 4) Additions and Enhancements:
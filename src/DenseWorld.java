@@ -0,0 +1,174 @@
+import java.util.Random;
+
+/**
+ * A World stored as the original String[][][] array, with a FreeCellIndex of its empty locations,
+ * and the type and nearbyMask of each location in flat arrays. Both are kept up to date by set.
+ *
+ * The array is the world's own: a map given to the constructors is copied, and toArray returns a
+ * copy, so set is the only way to change the map and the index can't go stale. To view an array
+ * that is changed directly, use an ArrayWorld.
+ */
+public class DenseWorld extends World {
+
+    private final String[][][] map;
+    private final FreeCellIndex freeCells;
+    // the type of each location, indexed by row * columns + column
+    private final short[] typeIds;
+    // the nearbyMask of each location, indexed like typeIds
+    private final byte[] nearby;
+    private long populated;
+
+    /**
+     * Copies a rectangular map, with the built in entity rules.
+     *
+     * @param map The map, indexes are row, column, fields/attributes.
+     */
+    public DenseWorld(String[][][] map) {
+        this(map, new EntityTypes());
+    }
+
+    /**
+     * Copies a rectangular map. Later changes to the map given don't change the world.
+     *
+     * @param map   The map, indexes are row, column, fields/attributes.
+     * @param types The rule table to resolve the types of the locations with.
+     */
+    public DenseWorld(String[][][] map, EntityTypes types) {
+        this(types, copy(map));
+    }
+
+    /**
+     * Takes a map that nothing else refers to, without copying it.
+     */
+    private DenseWorld(EntityTypes types, String[][][] map) {
+        super(map.length, map.length == 0 ? 0 : map[0].length, types);
+        this.map = map;
+        this.freeCells = FreeCellIndex.build(map);
+        this.populated = (long) rows * columns - freeCells.size();
+        this.typeIds = new short[rows * columns];
+        this.nearby = new byte[rows * columns];
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                if (map[row][column] != null) {
+                    typeIds[row * columns + column] = toShort(types.resolve(map[row][column]));
+                    if (hasNearbyText(map[row][column])) {
+                        updateNearby(row, column, true);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes a world of a map that was just built and that nothing else refers to, such as World.of
+     * does, without copying it.
+     *
+     * @param map   The map, indexes are row, column, fields/attributes.
+     * @param types The rule table to resolve the types of the locations with.
+     * @return The world, which now owns the map.
+     */
+    static DenseWorld adopt(String[][][] map, EntityTypes types) {
+        return new DenseWorld(types, map);
+    }
+
+    /**
+     * @return A copy of the map's rows, sharing the fields/attributes.
+     */
+    private static String[][][] copy(String[][][] map) {
+        String[][][] copy = new String[map.length][][];
+        for (int row = 0; row < map.length; row++) {
+            copy[row] = map[row].clone();
+        }
+        return copy;
+    }
+
+    /**
+     * Sets or clears the bit for a location in the nearby masks of its 4 neighbors.
+     */
+    private void updateNearby(int row, int column, boolean hasText) {
+        int up = row == 0 ? rows - 1 : row - 1;
+        int down = row == rows - 1 ? 0 : row + 1;
+        int left = column == 0 ? columns - 1 : column - 1;
+        int right = column == columns - 1 ? 0 : column + 1;
+        // the location is below the one above it, and so on
+        setNearbyBit(up * columns + column, Rules.DOWN, hasText);
+        setNearbyBit(down * columns + column, Rules.UP, hasText);
+        setNearbyBit(row * columns + left, Rules.RIGHT, hasText);
+        setNearbyBit(row * columns + right, Rules.LEFT, hasText);
+    }
+
+    private void setNearbyBit(int index, int direction, boolean hasText) {
+        if (hasText) {
+            nearby[index] |= 1 << direction;
+        } else {
+            nearby[index] &= ~(1 << direction);
+        }
+    }
+
+    private static short toShort(int type) {
+        if (type > Short.MAX_VALUE) {
+            throw new IllegalStateException("Too many entity types: " + type);
+        }
+        return (short) type;
+    }
+
+    @Override
+    public String[] get(int row, int column) {
+        return map[row][column];
+    }
+
+    @Override
+    public int type(int row, int column) {
+        checkBounds(row, column);
+        return typeIds[row * columns + column];
+    }
+
+    @Override
+    public int nearbyMask(int row, int column) {
+        checkBounds(row, column);
+        return nearby[row * columns + column];
+    }
+
+    @Override
+    public void set(int row, int column, String[] fields) {
+        map[row][column] = fields;
+        typeIds[row * columns + column] = toShort(types.resolve(fields));
+        updateNearby(row, column, hasNearbyText(fields));
+        int before = freeCells.size();
+        if (fields == null) {
+            freeCells.add(row, column);
+        } else {
+            freeCells.remove(row, column);
+        }
+        populated -= freeCells.size() - before;
+    }
+
+    @Override
+    public long populated() {
+        return populated;
+    }
+
+    @Override
+    public long pickFree(Random rand) {
+        return freeCells.pick(rand);
+    }
+
+    @Override
+    public void forEachPopulated(LocationVisitor visitor) {
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                if (map[row][column] != null) {
+                    visitor.visit(row, column, map[row][column]);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return A copy of the map, changing it doesn't change the world.
+     */
+    @Override
+    public String[][][] toArray() {
+        return copy(map);
+    }
+}
@@ -0,0 +1,144 @@
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The shared fields/attributes of the locations of a map, so that locations that look the same
+ * share one String[] (a flyweight) instead of each keeping its own copy of the same texts. Memory
+ * then grows with the number of different locations, not with the number of locations.
+ *
+ * A .advcfg file can declare a template once, with lines of the form
+ *
+ * <pre>
+ * template/id/name/enter text/enter result/nearby text/
+ * </pre>
+ *
+ * and a location refers to it by giving @id as its name, for example 0,7/@klingon/. Fields given
+ * after the reference replace the template's, and empty fields keep them, so
+ * 3,3/@klingon/A lone Klingon attacks!/ changes only the enter text. Like rules, templates apply
+ * to every location in the file wherever they are declared.
+ *
+ * Every location is passed through resolve, referring to a template or not, so two locations
+ * with the same fields share the same array, whichever way they were written. The arrays must
+ * not be changed once resolved.
+ */
+public class EntityTemplates {
+
+    /**
+     * The prefix of a template line in a .advcfg file.
+     */
+    public static final String TEMPLATE_LINE = "template";
+
+    /**
+     * What starts the name of a location that refers to a template.
+     */
+    public static final String REFERENCE = "@";
+
+    /**
+     * Looks arrays up by their contents.
+     */
+    private static final class Key {
+        String[] fields;
+
+        Key(String[] fields) {
+            this.fields = fields;
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(fields);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && Arrays.equals(fields, ((Key) other).fields);
+        }
+    }
+
+    // The fields of each template by id
+    private final HashMap<String, String[]> templates = new HashMap<>();
+    // The shared array for each distinct fields/attributes, and the shared strings in them
+    private final HashMap<Key, String[]> shared = new HashMap<>();
+    private final HashMap<String, String> strings = new HashMap<>();
+    // reused to look up arrays without allocating a key
+    private final Key probe = new Key(null);
+
+    /**
+     * Adds or replaces a template from the fields of a template line, the part after "template/".
+     *
+     * @param fields The id, then the fields/attributes of the locations that refer to it.
+     * @throws IllegalArgumentException If there are no fields/attributes after the id.
+     */
+    public void define(String[] fields) {
+        if (fields.length < 2 || fields[0].isEmpty()) {
+            throw new IllegalArgumentException("A template needs an id and a name: "
+                    + String.join("/", fields));
+        }
+        templates.put(fields[0], resolve(Arrays.copyOfRange(fields, 1, fields.length)));
+    }
+
+    /**
+     * Returns the shared array for a location's fields/attributes, filling in the template the
+     * location refers to if it does.
+     *
+     * @param fields The fields/attributes as read from the file, which become the shared array if
+     *               they are new.
+     * @return The shared fields/attributes, equal to fields unless it refers to a template.
+     * @throws IllegalArgumentException If the location refers to a template that isn't declared.
+     */
+    public String[] resolve(String[] fields) {
+        String name = fields[Config.NAME];
+        if (name.startsWith(REFERENCE)) {
+            String[] template = templates.get(name.substring(REFERENCE.length()));
+            if (template == null) {
+                throw new IllegalArgumentException("Unknown template '" + name + "'");
+            }
+            if (!overrides(fields, template)) {
+                return template;
+            }
+            String[] merged = Arrays.copyOf(template, Math.max(template.length, fields.length));
+            for (int i = 1; i < fields.length; i++) {
+                if (!fields[i].isEmpty() || i >= template.length) {
+                    merged[i] = fields[i];
+                }
+            }
+            fields = merged;
+        }
+        return share(fields);
+    }
+
+    /**
+     * Returns the shared array for fields/attributes that don't refer to a template, such as
+     * those of a compiled map.
+     *
+     * @param fields The fields/attributes, which become the shared array if they are new.
+     * @return The shared fields/attributes, equal to fields.
+     */
+    public String[] share(String[] fields) {
+        probe.fields = fields;
+        String[] found = shared.get(probe);
+        probe.fields = null;
+        if (found != null) {
+            return found;
+        }
+        for (int i = 0; i < fields.length; i++) {
+            String string = strings.putIfAbsent(fields[i], fields[i]);
+            if (string != null) {
+                fields[i] = string;
+            }
+        }
+        shared.put(new Key(fields), fields);
+        return fields;
+    }
+
+    /**
+     * @return true if a location referring to a template changes any of its fields.
+     */
+    private static boolean overrides(String[] fields, String[] template) {
+        for (int i = 1; i < fields.length; i++) {
+            if (!fields[i].isEmpty() || i >= template.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,237 @@
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The rule table for the things that can be at a location. Each populated location is given a
+ * small numeric type when it is loaded, and the game looks up what entering it does (the
+ * action), the sound it makes, its icon in writeMap and whether it can end the game by indexing
+ * these arrays with the type, instead of comparing strings on every move.
+ *
+ * A location's type depends on its Config.NAME and Config.ENTER_RESULT fields, with the same
+ * precedence Adventure.enter always had: a Config.RESULT_PHASER result gives an energy core and
+ * a Config.RESULT_RANDOM_MOVE result beams the player whatever the name; otherwise the rule for
+ * the name decides, and a name without a rule just describes itself.
+ *
+ * The rules for "spock", "khan", "klingon", "energy" and "beam" are built in. A .advcfg file can
+ * add or replace rules with lines of the form
+ *
+ * <pre>
+ * type/name/action/sound file/icon/
+ * </pre>
+ *
+ * where action is one of describe, gainCore, beam, win, lose or fight, and the sound file and icon
+ * may be left empty. For example: type/gorn/lose/src/sounds/alert.wav/G/
+ */
+public class EntityTypes {
+
+    /**
+     * What entering a location does.
+     */
+    public static final int DESCRIBE = 0;
+    public static final int GAIN_CORE = 1;
+    public static final int BEAM = 2;
+    public static final int WIN = 3;
+    public static final int LOSE = 4;
+    public static final int FIGHT = 5;
+    // an empty location, or one without an enter result
+    public static final int QUIET = 6;
+
+    private static final String[] ACTION_NAMES = { "describe", "gainCore", "beam", "win", "lose",
+            "fight" };
+
+    /**
+     * The prefix of a rule line in a .advcfg file.
+     */
+    public static final String RULE_LINE = "type";
+
+    /**
+     * The type of empty locations.
+     */
+    public static final int EMPTY = 0;
+
+    // The rule for each name: action, sound and icon
+    private final HashMap<String, Object[]> rules = new HashMap<>();
+    // The type of each name and result kind, see key
+    private final HashMap<String, Integer> typeIds = new HashMap<>();
+
+    private int count;
+    private String[] names = new String[8];
+    private int[] actions = new int[8];
+    private String[] sounds = new String[8];
+    private char[] icons = new char[8];
+    private boolean[] terminal = new boolean[8];
+
+    /**
+     * Creates a table with the built in rules.
+     */
+    public EntityTypes() {
+        define("spock", WIN, Config.SOUND_SPOCK, 'S');
+        define("khan", LOSE, Config.SOUND_KHAN, 'K');
+        define("klingon", FIGHT, Config.SOUND_KLINGON, '!');
+        // energy cores and beams get their actions from their enter results, not their names
+        define("energy", DESCRIBE, null, '.');
+        define("beam", DESCRIBE, null, '~');
+        add(null, QUIET, null, '-');
+    }
+
+    /**
+     * Adds or replaces the rule for a name. Locations whose types were resolved before keep their
+     * old type, locations resolved after get a type with the new rule.
+     *
+     * @param name   The Config.NAME the rule is for.
+     * @param action DESCRIBE, GAIN_CORE, BEAM, WIN, LOSE or FIGHT.
+     * @param sound  The sound to play on entering, or null. A fight plays it when it is lost.
+     *               A location that gains a core or beams because of its enter result only plays
+     *               it if this rule's action is the same, otherwise it plays Config.SOUND_ENERGY
+     *               or Config.SOUND_BEAM.
+     * @param icon   The character writeMap shows for the name.
+     */
+    public synchronized void define(String name, int action, String sound, char icon) {
+        rules.put(name, new Object[] { action, sound, icon });
+        typeIds.clear();
+    }
+
+    /**
+     * Adds or replaces a rule from the fields of a rule line, the part after "type/".
+     *
+     * @param fields The name, action, sound file and icon.
+     * @throws IllegalArgumentException If the action is not known.
+     */
+    public void define(String[] fields) {
+        String name = fields[0];
+        String actionName = fields.length > 1 ? fields[1] : "";
+        int action = -1;
+        for (int i = 0; i < ACTION_NAMES.length; i++) {
+            if (ACTION_NAMES[i].equalsIgnoreCase(actionName)) {
+                action = i;
+            }
+        }
+        if (action < 0) {
+            throw new IllegalArgumentException("Unknown action '" + actionName + "' for " + name);
+        }
+        String sound = fields.length > 2 && !fields[2].isEmpty() ? fields[2] : null;
+        char icon = fields.length > 3 && !fields[3].isEmpty() ? fields[3].charAt(0) : '?';
+        define(name, action, sound, icon);
+    }
+
+    /**
+     * Returns the type for a location's fields/attributes, adding it to the table if it is new.
+     *
+     * @param fields The fields/attributes, or null for an empty location.
+     * @return The type.
+     */
+    public synchronized int resolve(String[] fields) {
+        if (fields == null || fields.length <= Config.ENTER_RESULT
+                || fields[Config.ENTER_RESULT] == null) {
+            return EMPTY;
+        }
+        String name = fields[Config.NAME];
+        String result = fields[Config.ENTER_RESULT];
+        int kind = result.equals(Config.RESULT_PHASER) ? GAIN_CORE
+                : result.equals(Config.RESULT_RANDOM_MOVE) ? BEAM
+                : DESCRIBE;
+        String key = kind + "/" + name;
+        Integer type = typeIds.get(key);
+        if (type != null) {
+            return type;
+        }
+        Object[] rule = rules.get(name);
+        int action = kind != DESCRIBE ? kind : rule != null ? (Integer) rule[0] : DESCRIBE;
+        String sound = rule != null && (Integer) rule[0] == action ? (String) rule[1]
+                : action == GAIN_CORE ? Config.SOUND_ENERGY
+                : action == BEAM ? Config.SOUND_BEAM
+                : null;
+        char icon = rule != null ? (Character) rule[2] : '-';
+        type = add(name, action, sound, icon);
+        typeIds.put(key, type);
+        return type;
+    }
+
+    private int add(String name, int action, String sound, char icon) {
+        if (count == names.length) {
+            names = Arrays.copyOf(names, count * 2);
+            actions = Arrays.copyOf(actions, count * 2);
+            sounds = Arrays.copyOf(sounds, count * 2);
+            icons = Arrays.copyOf(icons, count * 2);
+            terminal = Arrays.copyOf(terminal, count * 2);
+        }
+        names[count] = name;
+        actions[count] = action;
+        sounds[count] = sound;
+        icons[count] = icon;
+        terminal[count] = action == WIN || action == LOSE || action == FIGHT;
+        return count++;
+    }
+
+    /**
+     * @return The number of types.
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * @param type A type.
+     * @return The Config.NAME of locations of the type, null for EMPTY.
+     */
+    public String name(int type) {
+        return names[type];
+    }
+
+    /**
+     * @param type A type.
+     * @return What entering a location of the type does.
+     */
+    public int action(int type) {
+        return actions[type];
+    }
+
+    /**
+     * @param type A type.
+     * @return The sound file for the type, or null.
+     */
+    public String sound(int type) {
+        return sounds[type];
+    }
+
+    /**
+     * @param type A type.
+     * @return The character writeMap shows for the type.
+     */
+    public char icon(int type) {
+        return icons[type];
+    }
+
+    /**
+     * @param type A type.
+     * @return true if entering a location of the type can end the game.
+     */
+    public boolean isTerminal(int type) {
+        return terminal[type];
+    }
+
+    /**
+     * @param action An action.
+     * @return The name of the action in a rule line.
+     */
+    public static String actionName(int action) {
+        return action < ACTION_NAMES.length ? ACTION_NAMES[action] : "quiet";
+    }
+
+    /**
+     * Calls the visitor with each rule, to save them.
+     *
+     * @param visitor Called with the name, action, sound and icon of each rule.
+     */
+    public synchronized void forEachRule(RuleVisitor visitor) {
+        rules.forEach((name, rule) -> visitor.visit(name, (Integer) rule[0], (String) rule[1],
+                (Character) rule[2]));
+    }
+
+    /**
+     * Receives the rules of an EntityTypes.
+     */
+    public interface RuleVisitor {
+        void visit(String name, int action, String sound, char icon);
+    }
+}
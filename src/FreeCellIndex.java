@@ -0,0 +1,154 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * An index of the empty locations in a map (those with null fields/attributes), kept as a compact
+ * array of packed coordinates so that a random empty location can be picked in constant time
+ * without allocating.
+ *
+ * A location is packed as row * columns + column. The first size entries of cells are the packed
+ * empty locations, and slots maps each packed location to its index within cells, or -1 when the
+ * location is not empty. Removing a location moves the last entry of cells into its place, so both
+ * updates are constant time as well.
+ *
+ * When built from a map, cells are in row-major order, so until the index is updated pick chooses
+ * the same location as the original list-based scan for the same random number.
+ */
+public class FreeCellIndex {
+
+    private final int rows;
+    private final int columns;
+    private final int[] cells;
+    private final int[] slots;
+    private int size;
+
+    /**
+     * Creates an index for a map of the given size with no empty locations recorded.
+     *
+     * @param rows    The number of rows in the map.
+     * @param columns The number of columns in the map.
+     */
+    public FreeCellIndex(int rows, int columns) {
+        this.rows = rows;
+        this.columns = columns;
+        this.cells = new int[rows * columns];
+        this.slots = new int[rows * columns];
+        Arrays.fill(slots, -1);
+    }
+
+    /**
+     * Builds the index for a rectangular map, recording every location that has null
+     * fields/attributes.
+     *
+     * @param map The map, indexes are row, column, fields/attributes.
+     * @return The index of the empty locations in the map.
+     */
+    public static FreeCellIndex build(String[][][] map) {
+        int rows = map.length;
+        int columns = rows == 0 ? 0 : map[0].length;
+        FreeCellIndex index = new FreeCellIndex(rows, columns);
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                if (map[row][column] == null) {
+                    index.add(row, column);
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @return The number of empty locations in the index.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The number of rows in the indexed map.
+     */
+    public int rows() {
+        return rows;
+    }
+
+    /**
+     * @return The number of columns in the indexed map.
+     */
+    public int columns() {
+        return columns;
+    }
+
+    /**
+     * @param row    The row of the location.
+     * @param column The column of the location.
+     * @return true if the location is recorded as empty.
+     */
+    public boolean isFree(int row, int column) {
+        return slots[row * columns + column] >= 0;
+    }
+
+    /**
+     * Records a location as empty. Does nothing if it is already recorded.
+     *
+     * @param row    The row of the location.
+     * @param column The column of the location.
+     */
+    public void add(int row, int column) {
+        int packed = row * columns + column;
+        if (slots[packed] < 0) {
+            cells[size] = packed;
+            slots[packed] = size;
+            size++;
+        }
+    }
+
+    /**
+     * Records a location as no longer empty. Does nothing if it is not recorded.
+     *
+     * @param row    The row of the location.
+     * @param column The column of the location.
+     */
+    public void remove(int row, int column) {
+        int packed = row * columns + column;
+        int slot = slots[packed];
+        if (slot >= 0) {
+            size--;
+            int last = cells[size];
+            cells[slot] = last;
+            slots[last] = slot;
+            slots[packed] = -1;
+        }
+    }
+
+    /**
+     * Randomly picks one of the empty locations and changes the row and column of the location
+     * parameter to be that location.
+     *
+     * @param rand     A random number generator.
+     * @param location Changed to be the coordinates of the picked location.
+     * @return true if a location was picked, false if there are no empty locations.
+     */
+    public boolean pick(Random rand, int[] location) {
+        long picked = pick(rand);
+        if (picked == Location.NONE) {
+            return false;
+        }
+        Location.unpack(picked, location);
+        return true;
+    }
+
+    /**
+     * Randomly picks one of the empty locations.
+     *
+     * @param rand A random number generator.
+     * @return The picked location packed by Location.pack, or Location.NONE if there are no empty
+     *         locations.
+     */
+    public long pick(Random rand) {
+        if (size == 0) {
+            return Location.NONE;
+        }
+        int packed = cells[rand.nextInt(size)];
+        return Location.pack(packed / columns, packed % columns);
+    }
+}
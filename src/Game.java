@@ -0,0 +1,256 @@
+import java.util.Arrays;
+
+/**
+ * One game played a command at a time, publishing what happens as events rather than printing
+ * it. An event is an int and the GameState of the game: the outcomes of entering a location
+ * (Rules.EMPTY to Rules.STRANDED, with the location in state.entered and state.enteredType), or
+ * one of the events below. No text is formatted and nothing is played here; the console text and
+ * the sounds are listeners (TextView and SoundPlayer), and a listener that only counts events,
+ * like Replay's summary, costs nothing more than the rules themselves.
+ *
+ * Listeners are called in the order they subscribed, on the thread playing the game.
+ *
+ * A game that follows a MapWatcher switches to the watcher's latest version of the map at the
+ * start of each command, publishing RELOADED.
+ *
+ * On a PatrolWorld, the patrols move after each move of the player, and a patrol that moves onto
+ * the player is entered like a location the player moved to.
+ */
+public class Game {
+
+    /**
+     * Command codes: Rules.UP, DOWN, LEFT, RIGHT and SENSE, then these.
+     */
+    public static final int DISPLAY_CORES = 5;
+    public static final int QUIT = 6;
+    // anything that isn't a command
+    public static final int OTHER = 7;
+
+    /**
+     * Events besides the outcomes of entering a location.
+     */
+    // the game is about to enter the starting location
+    public static final int STARTED = Rules.OUTCOMES;
+    // the player moved to state.position and is about to enter it
+    public static final int MOVED = Rules.OUTCOMES + 1;
+    // the player sensed the nearby locations, the text found is in state.nearby
+    public static final int SENSED = Rules.OUTCOMES + 2;
+    // the player asked for their energy cores, state.cores
+    public static final int SHOWED_CORES = Rules.OUTCOMES + 3;
+    // the player typed something that isn't a command
+    public static final int UNKNOWN_COMMAND = Rules.OUTCOMES + 4;
+    // the game is over: won, lost, quit or ended
+    public static final int ENDED = Rules.OUTCOMES + 5;
+    // the game switched to a new version of the map
+    public static final int RELOADED = Rules.OUTCOMES + 6;
+    // a patrol moved onto the player, who is about to enter it
+    public static final int AMBUSHED = Rules.OUTCOMES + 7;
+
+    /**
+     * Receives a game's events.
+     */
+    public interface Listener {
+        /**
+         * @param event An outcome of Rules.enter or one of the events of Game.
+         * @param state The game, as it is after the event.
+         */
+        void event(int event, GameState state);
+    }
+
+    private World world;
+    // the world, if its enemies move
+    private PatrolWorld patrols;
+    private final GameState state;
+    // the watcher followed, if any, and the version of its map played on
+    private MapWatcher maps;
+    private MapWatcher.Version version;
+    private Listener[] listeners = new Listener[0];
+    private boolean finished;
+
+    /**
+     * @param world The map.
+     * @param state The game, at its starting location.
+     */
+    public Game(World world, GameState state) {
+        this.world = world;
+        this.patrols = world instanceof PatrolWorld ? (PatrolWorld) world : null;
+        this.state = state;
+    }
+
+    /**
+     * Adds a listener, which is called after those already added.
+     *
+     * @param listener The listener.
+     */
+    public void subscribe(Listener listener) {
+        listeners = Arrays.copyOf(listeners, listeners.length + 1);
+        listeners[listeners.length - 1] = listener;
+    }
+
+    /**
+     * Plays on the latest version of a watched map from now on, switching to the version live at
+     * the start of each command.
+     *
+     * @param maps The watcher of the map.
+     */
+    public void follow(MapWatcher maps) {
+        this.maps = maps;
+        switchTo(maps.current());
+    }
+
+    /**
+     * Switches to a version of the map. The player keeps their location, wrapped into the map if
+     * it shrank, and their energy cores.
+     */
+    private void switchTo(MapWatcher.Version latest) {
+        version = latest;
+        world = latest.world;
+        patrols = world instanceof PatrolWorld ? (PatrolWorld) world : null;
+        state.position = Location.pack(state.row() % world.rows(),
+                state.column() % world.columns());
+        // a type of the previous map's rules
+        state.enteredType = EntityTypes.EMPTY;
+    }
+
+    /**
+     * @param command A player command, trimmed and lower case, such as Config.MOVE_UP.
+     * @return Its command code.
+     */
+    public static int command(String command) {
+        int direction = Rules.command(command);
+        if (direction >= 0) {
+            return direction;
+        } else if (command.equals(Config.DISPLAY_CORES)) {
+            return DISPLAY_CORES;
+        } else if (command.equals(Config.QUIT)) {
+            return QUIT;
+        }
+        return OTHER;
+    }
+
+    /**
+     * Starts the game by entering the starting location.
+     *
+     * @return true if the game is already over.
+     */
+    public boolean start() {
+        publish(STARTED);
+        return enter();
+    }
+
+    /**
+     * Enters the player's location and publishes the outcome, then ENDED if the outcome ends the
+     * game.
+     *
+     * @return true if the game is over.
+     */
+    public boolean enter() {
+        long time = Metrics.start();
+        int outcome = Rules.enter(world, state);
+        Metrics.lap(Metrics.ENTER, time);
+        Metrics.entered(world.types(), state.enteredType, outcome);
+        publish(outcome);
+        if (Rules.isFinished(outcome)) {
+            end();
+        }
+        return finished;
+    }
+
+    /**
+     * Plays a command typed by the player.
+     *
+     * @param command The command, trimmed and lower case.
+     * @return true if the game is over.
+     */
+    public boolean play(String command) {
+        return play(command(command));
+    }
+
+    /**
+     * Plays a command.
+     *
+     * @param command A command code, such as Rules.UP or QUIT.
+     * @return true if the game is over.
+     */
+    public boolean play(int command) {
+        if (maps != null) {
+            MapWatcher.Version latest = maps.current();
+            if (latest != version) {
+                switchTo(latest);
+                publish(RELOADED);
+            }
+        }
+        switch (command) {
+            case Rules.UP:
+            case Rules.DOWN:
+            case Rules.LEFT:
+            case Rules.RIGHT:
+                long time = Metrics.start();
+                state.position = Rules.step(world, state.position, command);
+                state.turns++;
+                Metrics.lap(Metrics.MOVE, time);
+                publish(MOVED);
+                if (enter() || patrols == null) {
+                    return finished;
+                }
+                patrols.tick();
+                if (patrols.at(state.row(), state.column()) >= 0) {
+                    publish(AMBUSHED);
+                    return enter();
+                }
+                return finished;
+            case Rules.SENSE:
+                state.nearby = Rules.sense(world, state);
+                publish(SENSED);
+                break;
+            case DISPLAY_CORES:
+                publish(SHOWED_CORES);
+                break;
+            case QUIT:
+                end();
+                break;
+            default:
+                publish(UNKNOWN_COMMAND);
+                break;
+        }
+        return finished;
+    }
+
+    /**
+     * Ends the game, such as when the player's input runs out, publishing ENDED unless the game
+     * is already over.
+     */
+    public void end() {
+        if (!finished) {
+            finished = true;
+            publish(ENDED);
+        }
+    }
+
+    /**
+     * @return true if the game is over.
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * @return The map being played.
+     */
+    public World world() {
+        return world;
+    }
+
+    /**
+     * @return The game's state.
+     */
+    public GameState state() {
+        return state;
+    }
+
+    private void publish(int event) {
+        for (Listener listener : listeners) {
+            listener.event(event, state);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+import java.util.Random;
+
+/**
+ * A Random whose state can be read and restored, so that a game can be snapshot and resumed
+ * exactly (see Snapshot). It is the same 48 bit linear congruential generator as java.util.Random
+ * and gives the same numbers for the same seed, so seeded games play out as they always have.
+ *
+ * Unlike Random it isn't thread safe: the state is a plain long rather than an AtomicLong, which
+ * a game, played on one thread, has no use for.
+ */
+public class GameRandom extends Random {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+
+    // set by setSeed, which Random's constructor calls, so it must not have an initializer
+    private long state;
+
+    /**
+     * Creates a generator with a seed that is very likely different from any other's.
+     */
+    public GameRandom() {
+        super();
+    }
+
+    /**
+     * @param seed The seed, as for Random.
+     */
+    public GameRandom(long seed) {
+        super(seed);
+    }
+
+    @Override
+    public void setSeed(long seed) {
+        super.setSeed(seed);
+        state = (seed ^ MULTIPLIER) & MASK;
+    }
+
+    @Override
+    protected int next(int bits) {
+        state = (state * MULTIPLIER + ADDEND) & MASK;
+        return (int) (state >>> (48 - bits));
+    }
+
+    /**
+     * @return The state of the generator, for setState.
+     */
+    public long state() {
+        return state;
+    }
+
+    /**
+     * Puts the generator back in a state it was in, so that it gives the same numbers again.
+     *
+     * @param state A state from state().
+     */
+    public void setState(long state) {
+        this.state = state & MASK;
+    }
+}
@@ -0,0 +1,354 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hosts the game for many players at once over TCP on localhost, one session per connection.
+ *
+ * The map is loaded once and shared by every session; sessions only read it. Each session has its
+ * own GameState (location, energy cores and Random), so nothing is shared through
+ * Config.ENERGY_CORES. Sessions play without sounds and send the same text the console game
+ * prints.
+ *
+ * Each session runs on its own virtual thread when the Java runtime has them (Java 21 and later).
+ * Otherwise each runs on a platform thread with a small stack, SESSION_STACK_SIZE, which still
+ * keeps an idle session to a few tens of kilobytes of committed memory.
+ *
+ * With -watch the configuration file is watched for changes by a MapWatcher, and each session
+ * switches to the new map at the start of its next command, keeping the player's location and
+ * energy cores; new sessions start on the new map.
+ *
+ * With -shared the players share one planet instead: the map is a SharedWorld, so an energy core
+ * picked up or a Klingon defeated by one player is gone for every player, until the server
+ * restarts.
+ *
+ * Usage: java GameServer [-c configuration_filename] [-port port] [-s seed] [-watch | -shared]
+ */
+public class GameServer {
+
+    public static final int DEFAULT_PORT = 7777;
+
+    /**
+     * The stack size of a session's platform thread, when virtual threads aren't available.
+     */
+    public static final long SESSION_STACK_SIZE = 128 * 1024;
+
+    /**
+     * The longest pause, in milliseconds, after accepting a connection fails, such as when the
+     * process runs out of file descriptors. The pause starts at 1 ms and doubles while accepting
+     * keeps failing.
+     */
+    public static final long MAX_ACCEPT_BACKOFF = 1000;
+
+    /**
+     * The longest line, in bytes and counting a \r before the newline, a player may send. A
+     * session whose player sends a longer one is closed, so a client that never sends a newline
+     * can't fill the heap.
+     */
+    public static final int MAX_LINE = 4096;
+
+    private final World world;
+    private final int[] start;
+    private final boolean seeded;
+    private final long seed;
+    private final AtomicLong sessionCount = new AtomicLong();
+    private final AtomicInteger activeSessions = new AtomicInteger();
+    private MapWatcher maps;
+
+    /**
+     * @param world  The map shared by all sessions.
+     * @param start  The starting location of every player.
+     * @param seeded Whether to seed each session's Random with seed plus the session number.
+     * @param seed   The seed of the first session.
+     */
+    public GameServer(World world, int[] start, boolean seeded, long seed) {
+        this.world = world;
+        this.start = start;
+        this.seeded = seeded;
+        this.seed = seed;
+    }
+
+    /**
+     * Plays every session from now on on the latest version of a watched map, instead of the map
+     * the server was created with. Call before serve.
+     *
+     * @param maps The watcher of the map.
+     */
+    public void follow(MapWatcher maps) {
+        this.maps = maps;
+    }
+
+    /**
+     * @return The number of sessions currently connected.
+     */
+    public int activeSessions() {
+        return activeSessions.get();
+    }
+
+    /**
+     * Creates the executor for sessions: a virtual thread per session if the runtime supports
+     * them, otherwise a small-stack platform thread per session.
+     *
+     * @return The executor.
+     */
+    public static ExecutorService sessionExecutor() {
+        try {
+            Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtual.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            AtomicLong threads = new AtomicLong();
+            ThreadFactory factory = task -> {
+                Thread thread = new Thread(null, task, "session-" + threads.incrementAndGet(),
+                        SESSION_STACK_SIZE);
+                thread.setDaemon(true);
+                return thread;
+            };
+            return Executors.newCachedThreadPool(factory);
+        }
+    }
+
+    /**
+     * Accepts connections until the server socket is closed or the thread is interrupted,
+     * starting a session for each. A failed accept is printed and retried after a pause (see
+     * MAX_ACCEPT_BACKOFF), so running out of file descriptors under load doesn't stop the server.
+     *
+     * @param server   The listening socket.
+     * @param sessions The executor to run the sessions on.
+     */
+    public void serve(ServerSocket server, ExecutorService sessions) {
+        long backoff = 0;
+        while (!server.isClosed()) {
+            Socket socket;
+            try {
+                socket = server.accept();
+            } catch (IOException e) {
+                if (server.isClosed()) {
+                    return;
+                }
+                backoff = Math.min(Math.max(1, backoff * 2), MAX_ACCEPT_BACKOFF);
+                System.out.println("Warning, unable to accept a connection, retrying in "
+                        + backoff + " ms: " + e.getMessage());
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                continue;
+            }
+            backoff = 0;
+            long number = sessionCount.getAndIncrement();
+            sessions.execute(() -> session(socket, number));
+        }
+    }
+
+    /**
+     * Plays one player's game over their connection.
+     *
+     * A session reads and writes the socket's streams directly, with a small line buffer and a
+     * reused StringBuilder, since readers and print streams each carry 8-16KB of buffers that an
+     * idle session would hold for nothing.
+     */
+    private void session(Socket socket, long number) {
+        activeSessions.incrementAndGet();
+        try (Socket connection = socket) {
+            connection.setTcpNoDelay(true);
+            LineInput in = new LineInput(connection.getInputStream());
+            OutputStream out = connection.getOutputStream();
+            int[] start = maps != null ? maps.current().start : this.start;
+            GameState state = new GameState(start[Config.ROW], start[Config.COLUMN],
+                    seeded ? new GameRandom(seed + number) : new GameRandom());
+            play(state, in, out);
+        } catch (IOException e) {
+            // the player disconnected, or sent a line longer than MAX_LINE
+        } finally {
+            activeSessions.decrementAndGet();
+        }
+    }
+
+    /**
+     * The game loop of the console game, reading commands from and writing to the connection.
+     * Everything printed for a turn is sent with one write.
+     */
+    private void play(GameState state, LineInput in, OutputStream out) throws IOException {
+        Game game = new Game(world, state);
+        if (maps != null) {
+            game.follow(maps);
+        }
+        TextView view = new TextView(null);
+        game.subscribe(view);
+        StringBuilder text = view.text();
+        boolean finished = game.start();
+        while (!finished) {
+            text.append("> ");
+            send(text, out);
+            String line = in.readLine();
+            if (line == null) {
+                return;
+            }
+            finished = game.play(line.trim().toLowerCase());
+        }
+        text.append("Thanks for playing!").append(System.lineSeparator());
+        send(text, out);
+    }
+
+    private static void send(StringBuilder text, OutputStream out) throws IOException {
+        out.write(text.toString().getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        text.setLength(0);
+    }
+
+    /**
+     * Reads UTF-8 lines of at most MAX_LINE bytes from a stream through a small buffer.
+     */
+    private static class LineInput {
+        private final InputStream in;
+        private byte[] line = new byte[64];
+        private final byte[] buffer = new byte[128];
+        private int position;
+        private int limit;
+
+        LineInput(InputStream in) {
+            this.in = in;
+        }
+
+        /**
+         * @return The next line without its terminator, or null at the end of the stream.
+         * @throws IOException If reading fails, or the line is longer than MAX_LINE bytes.
+         */
+        String readLine() throws IOException {
+            int length = 0;
+            while (true) {
+                if (position == limit) {
+                    limit = in.read(buffer);
+                    position = 0;
+                    if (limit <= 0) {
+                        limit = 0;
+                        return length > 0 ? decode(length) : null;
+                    }
+                }
+                byte b = buffer[position++];
+                if (b == '\n') {
+                    return decode(length);
+                }
+                if (length == line.length) {
+                    if (length == MAX_LINE) {
+                        throw new IOException("Line longer than " + MAX_LINE + " bytes");
+                    }
+                    line = Arrays.copyOf(line, Math.min(length * 2, MAX_LINE));
+                }
+                line[length++] = b;
+            }
+        }
+
+        private String decode(int length) {
+            if (length > 0 && line[length - 1] == '\r') {
+                length--;
+            }
+            return new String(line, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Starts the server and prints the number of connected sessions and the heap in use every few
+     * seconds.
+     *
+     * @param args See the class comment.
+     */
+    public static void main(String[] args) {
+        String configurationFile = "src/StarTrek.advcfg";
+        int port = DEFAULT_PORT;
+        boolean seeded = false;
+        long seed = 0;
+        boolean watch = false;
+        boolean shared = false;
+        for (int i = 0; i < args.length; ++i) {
+            if (args[i].equalsIgnoreCase("-c")) {
+                configurationFile = args[++i];
+            } else if (args[i].equalsIgnoreCase("-port")) {
+                port = Integer.parseInt(args[++i]);
+            } else if (args[i].equalsIgnoreCase("-s")) {
+                seed = Long.parseLong(args[++i]);
+                seeded = true;
+            } else if (args[i].equalsIgnoreCase("-watch")) {
+                watch = true;
+            } else if (args[i].equalsIgnoreCase("-shared")) {
+                shared = true;
+            }
+        }
+        if (watch && shared) {
+            System.out.println("Error, -watch can't be used with -shared");
+            return;
+        }
+
+        int[] start = new int[] { 0, 0 };
+        World world;
+        try {
+            world = MappedConfigLoader.load(configurationFile, start);
+            if (world == null) {
+                return;
+            }
+        } catch (IOException e) {
+            System.out.println("Error, unable to load file: " + configurationFile);
+            return;
+        } catch (IllegalArgumentException e) {
+            // such as a reference to an undeclared template or an unknown type
+            System.out.println("Error, bad map in file: " + configurationFile + ": "
+                    + e.getMessage());
+            return;
+        }
+        if (shared) {
+            world = new SharedWorld(world);
+        }
+
+        GameServer gameServer = new GameServer(world, start, seeded, seed);
+        if (watch) {
+            MapWatcher maps = new MapWatcher(configurationFile, world, start);
+            try {
+                maps.start();
+            } catch (IOException e) {
+                System.out.println("Error, unable to watch file: " + configurationFile);
+                return;
+            }
+            gameServer.follow(maps);
+        }
+        ExecutorService sessions = sessionExecutor();
+        try (ServerSocket server = new ServerSocket(port, 4096, InetAddress.getLoopbackAddress())) {
+            System.out.println("Serving " + configurationFile + " on "
+                    + server.getLocalSocketAddress());
+            Thread monitor = new Thread(() -> {
+                Runtime runtime = Runtime.getRuntime();
+                while (true) {
+                    try {
+                        Thread.sleep(5000);
+                    } catch (InterruptedException ie) {
+                        return;
+                    }
+                    int active = gameServer.activeSessions();
+                    long used = runtime.totalMemory() - runtime.freeMemory();
+                    System.out.printf("Sessions: %d active, %d total, heap %d MB, threads %d\n",
+                            active, gameServer.sessionCount.get(), used >> 20,
+                            Thread.activeCount());
+                }
+            }, "monitor");
+            monitor.setDaemon(true);
+            monitor.start();
+            gameServer.serve(server, sessions);
+        } catch (IOException e) {
+            System.out.println("Error, server stopped: " + e.getMessage());
+        } finally {
+            sessions.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+import java.util.Random;
+
+/**
+ * The state of one game: the player's location, their energy cores, the random number generator
+ * and the number of turns taken. The original Adventure methods keep this state in
+ * Config.ENERGY_CORES and the arrays passed to them; Rules and Game keep it here instead, so that
+ * any number of games can be played at once on the same map.
+ */
+public class GameState {
+
+    /**
+     * The player's location, packed by Location.pack.
+     */
+    public long position;
+
+    /**
+     * The number of energy cores collected and not yet used.
+     */
+    public int cores;
+
+    /**
+     * The number of moves made.
+     */
+    public int turns;
+
+    /**
+     * The fields/attributes of the location most recently entered, before any beam.
+     */
+    public String[] entered;
+
+    /**
+     * The type of the location most recently entered, in the world's EntityTypes.
+     */
+    public int enteredType;
+
+    /**
+     * The nearby text most recently sensed, null if none was found.
+     */
+    public String nearby;
+
+    /**
+     * The random number generator for this game.
+     */
+    public final Random rand;
+
+    /**
+     * Creates the state for a game starting at the given location.
+     *
+     * @param row    The starting row.
+     * @param column The starting column.
+     * @param rand   A random number generator for this game.
+     */
+    public GameState(int row, int column, Random rand) {
+        this.rand = rand;
+        position = Location.pack(row, column);
+    }
+
+    /**
+     * @return The row of the player's location.
+     */
+    public int row() {
+        return Location.row(position);
+    }
+
+    /**
+     * @return The column of the player's location.
+     */
+    public int column() {
+        return Location.column(position);
+    }
+
+    /**
+     * Resets this state for a new game, so that the same object can be used for game after game.
+     *
+     * @param row    The starting row.
+     * @param column The starting column.
+     * @param seed   The seed for the random number generator.
+     */
+    public void reset(int row, int column, long seed) {
+        position = Location.pack(row, column);
+        cores = 0;
+        turns = 0;
+        entered = null;
+        enteredType = EntityTypes.EMPTY;
+        nearby = null;
+        rand.setSeed(seed);
+    }
+}
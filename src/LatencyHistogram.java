@@ -0,0 +1,114 @@
+import java.util.Arrays;
+
+/**
+ * A histogram of latencies in nanoseconds with a fixed relative precision, in the manner of
+ * HdrHistogram: values below 64 are counted exactly, and every larger power of two range is split
+ * into 32 equal buckets, so a recorded value is off by at most 1/32 (about 3%) of itself. The
+ * buckets cover every positive long in under 2000 counters, and recording is a few shifts and an
+ * increment with no allocation.
+ *
+ * A histogram is not thread safe; Metrics records into its histograms while holding a lock.
+ */
+public class LatencyHistogram {
+
+    private static final int EXACT = 64;
+    private static final int SUB_BUCKETS = 32;
+    private static final int BUCKETS = EXACT + (63 - 6 + 1) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long total;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    /**
+     * Counts one value.
+     *
+     * @param nanos The value, negative values are counted as 0.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts[index(value)]++;
+        count++;
+        total += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    private static int index(long value) {
+        if (value < EXACT) {
+            return (int) value;
+        }
+        // value is in [2^(shift + 5), 2^(shift + 6)), so value >>> shift is in [32, 64)
+        int shift = 63 - Long.numberOfLeadingZeros(value) - 5;
+        return EXACT + (shift - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * @return The highest value that is counted in the same bucket as the index.
+     */
+    private static long highestValue(int index) {
+        if (index < EXACT) {
+            return index;
+        }
+        int shift = (index - EXACT) / SUB_BUCKETS + 1;
+        long sub = (index - EXACT) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    /**
+     * @return The number of values counted.
+     */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * @return The smallest value counted, 0 if none.
+     */
+    public long min() {
+        return count == 0 ? 0 : min;
+    }
+
+    /**
+     * @return The largest value counted.
+     */
+    public long max() {
+        return max;
+    }
+
+    /**
+     * @return The mean of the values counted, 0 if none.
+     */
+    public double mean() {
+        return count == 0 ? 0 : (double) total / count;
+    }
+
+    /**
+     * @param fraction A fraction between 0 and 1, such as 0.99.
+     * @return The value that fraction of the counted values are at or below, to the precision of
+     *         the buckets and never more than max; 0 if nothing was counted.
+     */
+    public long percentile(double fraction) {
+        long target = Math.max(1, (long) Math.ceil(count * fraction));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(highestValue(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Forgets every value counted.
+     */
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        total = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+}
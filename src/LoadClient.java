@@ -0,0 +1,86 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A load test for GameServer: opens many sessions, leaves them idle for a while, and then checks
+ * that every one of them still answers a command.
+ *
+ * All of the connections are made from one thread, the idle sessions cost the client nothing but
+ * their sockets. The check sends Config.DISPLAY_CORES to each session and waits for its "Energy
+ * cores" line, then quits the session.
+ *
+ * Usage: java LoadClient [-port port] [-n sessions] [-hold seconds]
+ */
+public class LoadClient {
+
+    /**
+     * Runs the load test.
+     *
+     * @param args See the class comment.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int port = GameServer.DEFAULT_PORT;
+        int count = 10000;
+        int holdSeconds = 10;
+        for (int i = 0; i < args.length; ++i) {
+            if (args[i].equalsIgnoreCase("-port")) {
+                port = Integer.parseInt(args[++i]);
+            } else if (args[i].equalsIgnoreCase("-n")) {
+                count = Integer.parseInt(args[++i]);
+            } else if (args[i].equalsIgnoreCase("-hold")) {
+                holdSeconds = Integer.parseInt(args[++i]);
+            }
+        }
+
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+        Socket[] sockets = new Socket[count];
+        int connected = 0;
+        long begin = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            try {
+                Socket socket = new Socket();
+                socket.connect(address, 10000);
+                sockets[i] = socket;
+                connected++;
+            } catch (IOException e) {
+                System.out.println("Connection " + i + " failed: " + e.getMessage());
+                break;
+            }
+        }
+        System.out.printf("Connected %d of %d sessions in %d ms, holding for %d s\n", connected,
+                count, (System.nanoTime() - begin) / 1000000, holdSeconds);
+        Thread.sleep(holdSeconds * 1000L);
+
+        int answered = 0;
+        begin = System.nanoTime();
+        for (int i = 0; i < connected; i++) {
+            try (Socket socket = sockets[i]) {
+                socket.setSoTimeout(10000);
+                OutputStream out = socket.getOutputStream();
+                out.write((Config.DISPLAY_CORES + "\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                BufferedReader in = new BufferedReader(new InputStreamReader(
+                        socket.getInputStream(), StandardCharsets.UTF_8), 1024);
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.contains("Energy cores:")) {
+                        answered++;
+                        break;
+                    }
+                }
+                out.write((Config.QUIT + "\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            } catch (IOException e) {
+                System.out.println("Session " + i + " failed: " + e.getMessage());
+            }
+        }
+        System.out.printf("%d of %d sessions answered after being idle, checked in %d ms\n",
+                answered, connected, (System.nanoTime() - begin) / 1000000);
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Locations packed into a single long, row in the high half and column in the low half, so that
+ * moving the player, entering and beaming work on a primitive value instead of an int[] that is
+ * allocated or shared by mistake. This is the same packing as the keys of a SparseWorld.
+ *
+ * Moves wrap at the edges of the map, as they always have.
+ */
+public final class Location {
+
+    /**
+     * Not a location, such as the result of picking an empty location in a full map.
+     */
+    public static final long NONE = -1L;
+
+    private Location() {
+    }
+
+    /**
+     * @param row    The row.
+     * @param column The column.
+     * @return The packed location.
+     */
+    public static long pack(int row, int column) {
+        return ((long) row << 32) | (column & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @param location A packed location.
+     * @return Its row.
+     */
+    public static int row(long location) {
+        return (int) (location >>> 32);
+    }
+
+    /**
+     * @param location A packed location.
+     * @return Its column.
+     */
+    public static int column(long location) {
+        return (int) location;
+    }
+
+    /**
+     * Moves one step in a direction, wrapping at the edges of the map.
+     *
+     * @param location  The packed location.
+     * @param direction Rules.UP, DOWN, LEFT or RIGHT; anything else doesn't move.
+     * @param rows      The number of rows in the map.
+     * @param columns   The number of columns in the map.
+     * @return The packed location after the step.
+     */
+    public static long step(long location, int direction, int rows, int columns) {
+        int row = row(location);
+        int column = column(location);
+        switch (direction) {
+            case Rules.UP:
+                return pack(row == 0 ? rows - 1 : row - 1, column);
+            case Rules.DOWN:
+                return pack(row == rows - 1 ? 0 : row + 1, column);
+            case Rules.LEFT:
+                return pack(row, column == 0 ? columns - 1 : column - 1);
+            case Rules.RIGHT:
+                return pack(row, column == columns - 1 ? 0 : column + 1);
+            default:
+                return location;
+        }
+    }
+
+    /**
+     * Copies a packed location into the row and column of a location array.
+     *
+     * @param location The packed location.
+     * @param array    Changed to be the location, indexes are Config.ROW and Config.COLUMN.
+     */
+    public static void unpack(long location, int[] array) {
+        array[Config.ROW] = row(location);
+        array[Config.COLUMN] = column(location);
+    }
+}
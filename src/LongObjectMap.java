@@ -0,0 +1,191 @@
+import java.util.Arrays;
+
+/**
+ * An open-addressing hash map from primitive long keys to object values, used for sparse storage
+ * where boxing a Long per entry would cost more than the entry itself.
+ *
+ * Collisions are resolved with linear probing and removals shift the following entries back, so
+ * there are no tombstones. A slot is empty when its value is null, which means null values can't
+ * be stored; putting null removes the key instead.
+ *
+ * @param <V> The type of the values.
+ */
+public class LongObjectMap<V> {
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+    private int resizeAt;
+
+    /**
+     * Creates a map with room for the expected number of entries before it has to grow.
+     *
+     * @param expected The expected number of entries.
+     */
+    public LongObjectMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expected / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * Spreads the bits of the key so that keys differing only in their high bits (such as packed
+     * coordinates in the same column) don't cluster.
+     */
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * @return The number of entries in the map.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param key The key to look up.
+     * @return The value stored for the key, or null if there isn't one.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int i = slot(key);
+        Object value;
+        while ((value = values[i]) != null) {
+            if (keys[i] == key) {
+                return (V) value;
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Stores a value for the key, replacing any previous value. Storing null removes the key.
+     *
+     * @param key   The key.
+     * @param value The value, or null to remove the key.
+     * @return The previous value for the key, or null if there wasn't one.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) {
+            return remove(key);
+        }
+        int i = slot(key);
+        Object current;
+        while ((current = values[i]) != null) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return (V) current;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size > resizeAt) {
+            grow();
+        }
+        return null;
+    }
+
+    /**
+     * Removes the key from the map.
+     *
+     * @param key The key.
+     * @return The value that was stored for the key, or null if there wasn't one.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int i = slot(key);
+        Object current;
+        while ((current = values[i]) != null) {
+            if (keys[i] == key) {
+                shiftBack(i);
+                size--;
+                return (V) current;
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Fills the emptied slot with any following entry that would otherwise become unreachable,
+     * repeating until an empty slot ends the probe sequence.
+     */
+    private void shiftBack(int gap) {
+        int i = gap;
+        while (true) {
+            i = (i + 1) & mask;
+            if (values[i] == null) {
+                break;
+            }
+            int home = slot(keys[i]);
+            // move the entry if its home slot is not in the (cyclic) range (gap, i]
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = keys[i];
+                values[gap] = values[i];
+                gap = i;
+            }
+        }
+        values[gap] = null;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(oldKeys.length << 1);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                int j = slot(oldKeys[i]);
+                while (values[j] != null) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Calls the visitor with each entry in the map, in no particular order.
+     *
+     * @param visitor Called with each key and value.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(Visitor<V> visitor) {
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != null) {
+                visitor.visit(keys[i], (V) values[i]);
+            }
+        }
+    }
+
+    /**
+     * Removes every entry, keeping the current capacity.
+     */
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Receives the entries of a LongObjectMap.
+     *
+     * @param <V> The type of the values.
+     */
+    public interface Visitor<V> {
+        void visit(long key, V value);
+    }
+}
@@ -0,0 +1,310 @@
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Compiles a .advcfg map configuration into a binary file that loads without any text parsing,
+ * and loads such files.
+ *
+ * The binary format (all numbers big-endian):
+ *
+ * <pre>
+ * header       magic "ADVB", version, rows, columns, start row, start column (-1 if none),
+ *              source length, source last modified time, source path (length + UTF-8 bytes)
+ * strings      count, then the offset of each string within the blob, then the blob length
+ *              and the blob of UTF-8 bytes; every distinct field value is stored once
+ * types        count, then the string index of each type's name (Config.NAME)
+ * rules        count, then for each entity rule (see EntityTypes): the string index of its
+ *              name, its action, the string index of its sound (-1 if none) and its icon
+ * locations    count, then for each location: row, column, type index, field count, and the
+ *              string index of each field after Config.NAME
+ * </pre>
+ *
+ * The source length and time are used to tell when the binary file is stale, that is, when the
+ * .advcfg it was compiled from has changed since.
+ *
+ * Usage: java MapCompiler source.advcfg target.advmap
+ */
+public class MapCompiler {
+
+    public static final int MAGIC = 0x41445642; // "ADVB"
+    public static final int VERSION = 2;
+
+    /**
+     * Compiles the map configuration file into a binary file.
+     *
+     * @param sourceName The configuration file to read, typically ending with .advcfg.
+     * @param targetName The binary file to write.
+     * @throws IOException On error reading or writing the files.
+     */
+    public static void compile(String sourceName, String targetName) throws IOException {
+        File source = new File(sourceName);
+        int[] start = new int[] { -1, -1 };
+        World world = MappedConfigLoader.load(sourceName, start);
+        if (world == null) {
+            throw new IOException("No map size found in " + sourceName);
+        }
+
+        int count = (int) world.populated();
+        int[] cellRows = new int[count];
+        int[] cellCols = new int[count];
+        String[][] cells = new String[count][];
+        int[] next = new int[1];
+        world.forEachPopulated((row, column, fields) -> {
+            cellRows[next[0]] = row;
+            cellCols[next[0]] = column;
+            cells[next[0]] = fields;
+            next[0]++;
+        });
+
+        // give every distinct string and name an index, in the order they are first seen
+        HashMap<String, Integer> stringIndexes = new HashMap<>();
+        HashMap<String, Integer> typeIndexes = new HashMap<>();
+        ArrayList<String> strings = new ArrayList<>();
+        ArrayList<Integer> typeNames = new ArrayList<>();
+        for (String[] fields : cells) {
+            for (String field : fields) {
+                if (stringIndexes.putIfAbsent(field, strings.size()) == null) {
+                    strings.add(field);
+                }
+            }
+            if (typeIndexes.putIfAbsent(fields[Config.NAME], typeNames.size()) == null) {
+                typeNames.add(stringIndexes.get(fields[Config.NAME]));
+            }
+        }
+        ArrayList<int[]> rules = new ArrayList<>();
+        world.types().forEachRule((name, action, sound, icon) -> {
+            int[] rule = new int[] { intern(name, stringIndexes, strings), action,
+                    sound == null ? -1 : intern(sound, stringIndexes, strings), icon };
+            rules.add(rule);
+        });
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(targetName), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(world.rows());
+            out.writeInt(world.columns());
+            out.writeInt(start[Config.ROW]);
+            out.writeInt(start[Config.COLUMN]);
+            out.writeLong(source.length());
+            out.writeLong(source.lastModified());
+            byte[] path = source.getAbsolutePath().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(path.length);
+            out.write(path);
+
+            byte[][] encoded = new byte[strings.size()][];
+            int blobLength = 0;
+            out.writeInt(strings.size());
+            for (int i = 0; i < encoded.length; i++) {
+                encoded[i] = strings.get(i).getBytes(StandardCharsets.UTF_8);
+                out.writeInt(blobLength);
+                blobLength += encoded[i].length;
+            }
+            out.writeInt(blobLength);
+            for (byte[] bytes : encoded) {
+                out.write(bytes);
+            }
+
+            out.writeInt(typeNames.size());
+            for (int nameIndex : typeNames) {
+                out.writeInt(nameIndex);
+            }
+
+            out.writeInt(rules.size());
+            for (int[] rule : rules) {
+                for (int value : rule) {
+                    out.writeInt(value);
+                }
+            }
+
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                String[] fields = cells[i];
+                out.writeInt(cellRows[i]);
+                out.writeInt(cellCols[i]);
+                out.writeInt(typeIndexes.get(fields[Config.NAME]));
+                out.writeInt(fields.length);
+                for (int f = 1; f < fields.length; f++) {
+                    out.writeInt(stringIndexes.get(fields[f]));
+                }
+            }
+        }
+    }
+
+    private static int intern(String string, HashMap<String, Integer> stringIndexes,
+            ArrayList<String> strings) {
+        Integer index = stringIndexes.putIfAbsent(string, strings.size());
+        if (index == null) {
+            strings.add(string);
+            return strings.size() - 1;
+        }
+        return index;
+    }
+
+    /**
+     * @param fileName A map file.
+     * @return true if the file is a compiled binary map rather than a .advcfg text file.
+     */
+    public static boolean isCompiled(String fileName) {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(fileName))) {
+            return in.readInt() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the source .advcfg file a binary map was compiled from if that file has changed
+     * since, which means the binary map is stale.
+     *
+     * @param fileName A compiled binary map.
+     * @return The changed source file, or null if the source is unchanged or no longer exists.
+     * @throws IOException On error reading the binary file.
+     */
+    public static String staleSource(String fileName) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(fileName))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(fileName + " is not a compiled map");
+            }
+            in.skipBytes(5 * 4);
+            long length = in.readLong();
+            long lastModified = in.readLong();
+            byte[] path = new byte[in.readInt()];
+            in.readFully(path);
+            File source = new File(new String(path, StandardCharsets.UTF_8));
+            if (source.exists()
+                    && (source.length() != length || source.lastModified() != lastModified)) {
+                return source.getPath();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Loads a compiled binary map by memory mapping it.
+     *
+     * @param fileName               The binary map file.
+     * @param playerStartingLocation Updated within this method to contain the starting row and
+     *                               column of the player, if the map has one.
+     * @return The map.
+     * @throws FileNotFoundException If the file doesn't exist.
+     * @throws IOException           If the file is not a compiled map of this version.
+     */
+    public static World load(String fileName, int[] playerStartingLocation) throws IOException {
+        if (!new File(fileName).isFile()) {
+            throw new FileNotFoundException(fileName);
+        }
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName),
+                StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(fileName + " is too large to map");
+            }
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.getInt() != MAGIC) {
+                throw new IOException(fileName + " is not a compiled map");
+            }
+            int version = in.getInt();
+            if (version != VERSION) {
+                throw new IOException(fileName + " is version " + version + ", expected "
+                        + VERSION);
+            }
+            int rows = in.getInt();
+            int columns = in.getInt();
+            int startRow = in.getInt();
+            int startColumn = in.getInt();
+            // skip the source length, time and path, they are only used by staleSource
+            in.position(in.position() + 16);
+            int pathLength = in.getInt();
+            in.position(in.position() + pathLength);
+
+            int stringCount = in.getInt();
+            int[] offsets = new int[stringCount + 1];
+            for (int i = 0; i < stringCount; i++) {
+                offsets[i] = in.getInt();
+            }
+            offsets[stringCount] = in.getInt();
+            byte[] blob = new byte[offsets[stringCount]];
+            in.get(blob);
+            String[] strings = new String[stringCount];
+            for (int i = 0; i < stringCount; i++) {
+                strings[i] = new String(blob, offsets[i], offsets[i + 1] - offsets[i],
+                        StandardCharsets.UTF_8);
+            }
+
+            int typeCount = in.getInt();
+            String[] typeNames = new String[typeCount];
+            for (int i = 0; i < typeCount; i++) {
+                typeNames[i] = strings[in.getInt()];
+            }
+
+            EntityTypes types = new EntityTypes();
+            int ruleCount = in.getInt();
+            for (int i = 0; i < ruleCount; i++) {
+                String name = strings[in.getInt()];
+                int action = in.getInt();
+                int sound = in.getInt();
+                char icon = (char) in.getInt();
+                types.define(name, action, sound < 0 ? null : strings[sound], icon);
+            }
+
+            // locations with the same fields/attributes share them, as they do when loaded from
+            // the .advcfg
+            EntityTemplates shared = new EntityTemplates();
+            int count = in.getInt();
+            int[] cellRows = new int[count];
+            int[] cellCols = new int[count];
+            String[][] cells = new String[count][];
+            for (int i = 0; i < count; i++) {
+                cellRows[i] = in.getInt();
+                cellCols[i] = in.getInt();
+                String name = typeNames[in.getInt()];
+                String[] fields = new String[in.getInt()];
+                fields[Config.NAME] = name;
+                for (int f = 1; f < fields.length; f++) {
+                    fields[f] = strings[in.getInt()];
+                }
+                cells[i] = shared.share(fields);
+            }
+
+            if (startRow >= 0) {
+                playerStartingLocation[Config.ROW] = startRow;
+                playerStartingLocation[Config.COLUMN] = startColumn;
+            }
+            return World.of(rows, columns, cellRows, cellCols, cells, count, types);
+        }
+    }
+
+    /**
+     * Compiles a .advcfg file into a binary map.
+     *
+     * @param args The source .advcfg file and the binary file to write.
+     */
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.out.println("Usage: java MapCompiler source.advcfg target.advmap");
+            return;
+        }
+        try {
+            long begin = System.nanoTime();
+            compile(args[0], args[1]);
+            System.out.printf("Compiled %s to %s in %d ms\n", args[0], args[1],
+                    (System.nanoTime() - begin) / 1000000);
+        } catch (IOException | IllegalArgumentException e) {
+            // such as a reference to an undeclared template or an unknown type
+            System.out.println("Error, unable to compile " + args[0] + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,195 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Draws the debug map file of writeMap incrementally. The file has the same layout as writeMap's:
+ * one line per row, each location an icon and a space, with the player shown as 'x'. But it is
+ * written once, into a memory mapped file of fixed width, and after that each render only patches
+ * the locations that changed: the player's old and new locations, and any location reported with
+ * changed. So a turn costs a few bytes however large the map is.
+ *
+ * Alternatively the renderer draws only a viewport of (2 * radius + 1) rows and columns around
+ * the player, wrapping at the edges of the map like movement does. The viewport is redrawn each
+ * render, it is small.
+ *
+ * Each location takes one byte, so icons outside of US-ASCII are drawn as '?'. Full maps over the
+ * 2GB limit of a MappedByteBuffer are mapped in several segments of whole rows.
+ */
+public class MapRenderer {
+
+    /**
+     * Draw the whole map rather than a viewport.
+     */
+    public static final int FULL_MAP = -1;
+
+    /**
+     * The radius of the viewport for maps too large to draw whole, such as a ChunkedWorld.
+     */
+    public static final int DEFAULT_RADIUS = 10;
+
+    private static final byte PLAYER_ICON = 'x';
+    private static final long MAX_SEGMENT = 1L << 30;
+
+    private final World world;
+    private final String fileName;
+    private final int radius;
+    private final int windowRows;
+    private final int windowColumns;
+    // bytes per line, two per location and the newline
+    private final int lineLength;
+
+    private MappedByteBuffer[] segments;
+    private int rowsPerSegment;
+    private int playerRow = -1;
+    private int playerColumn = -1;
+    private byte[] line;
+
+    /**
+     * @param world    The map.
+     * @param fileName The name of the file the map is written to.
+     * @param radius   The number of locations to show on each side of the player, or FULL_MAP.
+     * @throws IllegalArgumentException If a row of the map is too long to map, over a gigabyte, or
+     *                                  the whole map is drawn and it can't be listed.
+     */
+    public MapRenderer(World world, String fileName, int radius) {
+        if (radius == FULL_MAP) {
+            World.requireListable(world, "drawn whole, use a viewport");
+        }
+        this.world = world;
+        this.fileName = fileName;
+        this.radius = radius;
+        if (radius == FULL_MAP) {
+            windowRows = world.rows();
+            windowColumns = world.columns();
+        } else {
+            windowRows = (int) Math.min(world.rows(), 2L * radius + 1);
+            windowColumns = (int) Math.min(world.columns(), 2L * radius + 1);
+        }
+        if (windowColumns * 2L + 1 > MAX_SEGMENT) {
+            throw new IllegalArgumentException("The map is too wide to draw, use a viewport");
+        }
+        lineLength = windowColumns * 2 + 1;
+    }
+
+    /**
+     * Shows the player at their location, drawing the whole file on the first call and only what
+     * changed after that.
+     *
+     * @param player The player's location.
+     */
+    public void render(int[] player) {
+        try {
+            if (segments == null) {
+                open();
+                if (radius == FULL_MAP) {
+                    drawAll();
+                }
+            }
+            if (radius == FULL_MAP) {
+                if (playerRow >= 0) {
+                    put(playerRow, playerColumn, icon(playerRow, playerColumn));
+                }
+                playerRow = player[Config.ROW];
+                playerColumn = player[Config.COLUMN];
+                put(playerRow, playerColumn, PLAYER_ICON);
+            } else {
+                drawViewport(player[Config.ROW], player[Config.COLUMN]);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Redraws a location whose fields/attributes have changed, such as a consumed item. Locations
+     * outside of a viewport are drawn on the next render anyway.
+     *
+     * @param row    The row of the location.
+     * @param column The column of the location.
+     */
+    public void changed(int row, int column) {
+        if (segments == null || radius != FULL_MAP) {
+            return;
+        }
+        if (row != playerRow || column != playerColumn) {
+            put(row, column, icon(row, column));
+        }
+    }
+
+    /**
+     * Creates the file at its full size and maps it.
+     */
+    private void open() throws IOException {
+        long size = (long) windowRows * lineLength;
+        rowsPerSegment = (int) Math.max(1, Math.min(windowRows, MAX_SEGMENT / lineLength));
+        int segmentCount = windowRows == 0 ? 0 : (windowRows - 1) / rowsPerSegment + 1;
+        segments = new MappedByteBuffer[segmentCount];
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            for (int s = 0; s < segmentCount; s++) {
+                long from = (long) s * rowsPerSegment * lineLength;
+                long length = Math.min(size - from, (long) rowsPerSegment * lineLength);
+                segments[s] = channel.map(FileChannel.MapMode.READ_WRITE, from, length);
+            }
+        }
+        line = new byte[lineLength];
+    }
+
+    /**
+     * Draws every location: each row starts out empty, and then the populated locations are drawn
+     * over it, so a sparse map costs its populated locations rather than its area in lookups.
+     */
+    private void drawAll() {
+        EntityTypes types = world.types();
+        Arrays.fill(line, 0, lineLength - 1, (byte) ' ');
+        byte empty = toByte(types.icon(EntityTypes.EMPTY));
+        for (int column = 0; column < windowColumns; column++) {
+            line[column * 2] = empty;
+        }
+        line[lineLength - 1] = '\n';
+        for (int row = 0; row < windowRows; row++) {
+            MappedByteBuffer segment = segments[row / rowsPerSegment];
+            segment.put((row % rowsPerSegment) * lineLength, line);
+        }
+        world.forEachPopulated((row, column, fields) -> put(row, column, icon(row, column)));
+    }
+
+    /**
+     * Draws the viewport centered on the player.
+     */
+    private void drawViewport(int centerRow, int centerColumn) {
+        EntityTypes types = world.types();
+        int top = windowRows == world.rows() ? 0 : Math.floorMod(centerRow - radius, world.rows());
+        int left = windowColumns == world.columns() ? 0
+                : Math.floorMod(centerColumn - radius, world.columns());
+        line[lineLength - 1] = '\n';
+        for (int r = 0; r < windowRows; r++) {
+            int row = (top + r) % world.rows();
+            for (int c = 0; c < windowColumns; c++) {
+                int column = (left + c) % world.columns();
+                byte icon = row == centerRow && column == centerColumn ? PLAYER_ICON
+                        : toByte(types.icon(world.type(row, column)));
+                line[c * 2] = icon;
+                line[c * 2 + 1] = ' ';
+            }
+            segments[r / rowsPerSegment].put((r % rowsPerSegment) * lineLength, line);
+        }
+    }
+
+    private byte icon(int row, int column) {
+        return toByte(world.types().icon(world.type(row, column)));
+    }
+
+    private static byte toByte(char icon) {
+        return icon < 0x80 ? (byte) icon : (byte) '?';
+    }
+
+    private void put(int row, int column, byte icon) {
+        segments[row / rowsPerSegment].put((row % rowsPerSegment) * lineLength + column * 2, icon);
+    }
+}
@@ -0,0 +1,221 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a map's configuration file and loads it again whenever it changes, so that a server
+ * can take an edited map without restarting and losing its players' sessions.
+ *
+ * The file's directory is watched with a WatchService on a daemon thread. A change is loaded
+ * once the file has stopped changing for RELOAD_DELAY milliseconds, since editors write a file in
+ * several steps. The new map is compared with the live one (see diff), and if it differs it is
+ * published as a new Version with a single volatile write. A Version is never changed after it
+ * is published, and its map is only read, so games read current() once a turn (see Game.follow)
+ * and switch to a new version between turns without any locking. A file that fails to load
+ * leaves the live version in place.
+ */
+public class MapWatcher implements Closeable {
+
+    /**
+     * How long the file must stop changing before it is loaded, in milliseconds.
+     */
+    public static final long RELOAD_DELAY = 200;
+
+    /**
+     * One version of the map, which is never changed once published.
+     */
+    public static final class Version {
+        public final World world;
+        // the player's starting location, {row, column}
+        public final int[] start;
+        // counts from 1, the map first loaded
+        public final long number;
+        // what changed from the previous version, see diff
+        public final String changes;
+
+        Version(World world, int[] start, long number, String changes) {
+            this.world = world;
+            this.start = start;
+            this.number = number;
+            this.changes = changes;
+        }
+    }
+
+    private final Path file;
+    private volatile Version current;
+    private WatchService service;
+    private Thread thread;
+
+    /**
+     * @param fileName The configuration file the map was loaded from, a .advcfg or a map compiled
+     *                 with MapCompiler.
+     * @param world    The map loaded from it, which becomes version 1 and must not be changed.
+     * @param start    The starting location loaded with it.
+     */
+    public MapWatcher(String fileName, World world, int[] start) {
+        this.file = Paths.get(fileName).toAbsolutePath();
+        this.current = new Version(world, start.clone(), 1, "");
+    }
+
+    /**
+     * @return The live version of the map.
+     */
+    public Version current() {
+        return current;
+    }
+
+    /**
+     * Starts watching the file.
+     *
+     * @throws IOException          If the file's directory can't be watched.
+     * @throws IllegalStateException If already started.
+     */
+    public synchronized void start() throws IOException {
+        if (service != null) {
+            throw new IllegalStateException("Already watching " + file);
+        }
+        service = file.getFileSystem().newWatchService();
+        file.getParent().register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        thread = new Thread(this::watch, "map-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Waits for changes to the file until closed.
+     */
+    private void watch() {
+        try {
+            while (true) {
+                if (!changed(service.take())) {
+                    continue;
+                }
+                // wait for the writes to settle
+                WatchKey key;
+                while ((key = service.poll(RELOAD_DELAY, TimeUnit.MILLISECONDS)) != null) {
+                    changed(key);
+                }
+                reload();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        }
+    }
+
+    /**
+     * @return true if the events of a key include a change to the file.
+     */
+    private boolean changed(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.context() instanceof Path && file.getFileName().equals(event.context())) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+
+    /**
+     * Loads the file and publishes it as a new version if it differs from the live one.
+     *
+     * @return The version now live.
+     */
+    public Version reload() {
+        Version live = current;
+        int[] start = new int[] { 0, 0 };
+        World world;
+        try {
+            if (MapCompiler.isCompiled(file.toString())) {
+                world = MapCompiler.load(file.toString(), start);
+            } else {
+                world = MappedConfigLoader.load(file.toString(), start);
+            }
+        } catch (IOException | RuntimeException e) {
+            world = null;
+        }
+        if (world == null) {
+            System.out.println("Error, unable to reload file: " + file + ", keeping version "
+                    + live.number);
+            return live;
+        }
+        String changes = diff(live.world, live.start, world, start);
+        if (changes == null) {
+            return live;
+        }
+        Version next = new Version(world, start, live.number + 1, changes);
+        current = next;
+        System.out.println("Reloaded " + file + " as version " + next.number + ": " + changes);
+        return next;
+    }
+
+    /**
+     * Compares two maps location by location. A location is changed if its fields/attributes
+     * differ or its type's action does (after a change to the 'type' rules).
+     *
+     * @param live      The live map.
+     * @param liveStart Its starting location.
+     * @param next      The new map.
+     * @param nextStart Its starting location.
+     * @return The changes, such as "2 added, 1 removed, 3 changed", or null if there are none.
+     */
+    public static String diff(World live, int[] liveStart, World next, int[] nextStart) {
+        long[] counts = new long[3];
+        EntityTypes liveTypes = live.types();
+        EntityTypes nextTypes = next.types();
+        live.forEachPopulated((row, column, fields) -> {
+            String[] now = contains(next, row, column) ? next.get(row, column) : null;
+            if (now == null) {
+                counts[1]++;
+            } else if (!Arrays.equals(fields, now) || liveTypes.action(live.type(row, column))
+                    != nextTypes.action(next.type(row, column))) {
+                counts[2]++;
+            }
+        });
+        next.forEachPopulated((row, column, fields) -> {
+            if (!contains(live, row, column) || live.get(row, column) == null) {
+                counts[0]++;
+            }
+        });
+        StringBuilder changes = new StringBuilder();
+        changes.append(counts[0]).append(" added, ").append(counts[1]).append(" removed, ")
+                .append(counts[2]).append(" changed");
+        boolean resized = live.rows() != next.rows() || live.columns() != next.columns();
+        if (resized) {
+            changes.append(", size ").append(live.rows()).append(" x ").append(live.columns())
+                    .append(" to ").append(next.rows()).append(" x ").append(next.columns());
+        }
+        boolean moved = !Arrays.equals(liveStart, nextStart);
+        if (moved) {
+            changes.append(", start ").append(liveStart[Config.ROW]).append(',')
+                    .append(liveStart[Config.COLUMN]).append(" to ").append(nextStart[Config.ROW])
+                    .append(',').append(nextStart[Config.COLUMN]);
+        }
+        return counts[0] + counts[1] + counts[2] == 0 && !resized && !moved ? null
+                : changes.toString();
+    }
+
+    private static boolean contains(World world, int row, int column) {
+        return row < world.rows() && column < world.columns();
+    }
+
+    /**
+     * Stops watching the file. The live version stays live.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (service != null) {
+            service.close();
+            thread.interrupt();
+        }
+    }
+}
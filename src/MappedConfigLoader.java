@@ -0,0 +1,538 @@
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.InputMismatchException;
+import java.util.stream.IntStream;
+
+/**
+ * Reads a .advcfg map configuration file by memory mapping it and scanning the bytes for the /
+ * and , separators directly, rather than reading lines with a Scanner and splitting them. Only
+ * the fields of locations that are kept in the map are decoded into strings.
+ *
+ * The result is the same as Adventure.loadWorld: the first line starting with coordinates is the
+ * size of the map, every later line starting with coordinates gives the fields/attributes of that
+ * location (a later line for the same location replaces an earlier one), and the last location
+ * whose Config.NAME is Config.NAME_START is the player's starting location. Lines starting with
+ * EntityTypes.RULE_LINE define entity rules, and lines starting with
+ * EntityTemplates.TEMPLATE_LINE templates, in file order. Lines end at \n, \r, \r\n, and the
+ * Unicode line and paragraph separators, as they do for Scanner.nextLine.
+ *
+ * Maps repeat the same few locations over and over, so each chunk keeps the bytes of the first
+ * MAX_CACHED_LINES distinct lines it reads, and a line seen before takes the fields decoded the
+ * first time without decoding them again. The merged locations go through EntityTemplates, so
+ * that locations with the same fields/attributes share one array across chunks.
+ *
+ * Large files are split into chunks at line boundaries, each chunk is mapped and parsed on its
+ * own, and the chunks are merged in file order. The chunks are parsed in parallel when the file
+ * is at least PARALLEL_THRESHOLD bytes.
+ *
+ * Only ASCII compatible platform encodings (UTF-8 and US-ASCII) can be scanned as bytes; for any
+ * other encoding this falls back to Adventure.loadWorld. So does a US-ASCII file containing other
+ * bytes, since Scanner stops reading at the first byte it can't decode.
+ */
+public class MappedConfigLoader {
+
+    /**
+     * Files of at least this many bytes are parsed in parallel chunks.
+     */
+    public static final long PARALLEL_THRESHOLD = 32L << 20;
+
+    /**
+     * The largest chunk mapped at once, well under the 2GB limit of a MappedByteBuffer.
+     */
+    private static final long MAX_CHUNK = 256L << 20;
+
+    /**
+     * The most distinct lines a chunk keeps the bytes of, so that a map whose lines are all
+     * different doesn't keep a second copy of them.
+     */
+    private static final int MAX_CACHED_LINES = 1 << 16;
+
+    /**
+     * Reads the map configuration, in parallel for large files.
+     *
+     * @param fileName               The configuration file to read, typically ending with .advcfg.
+     * @param playerStartingLocation Updated within this method to contain the starting row and
+     *                               column of the player.
+     * @return The map, or null if the file contains no coordinates.
+     * @throws FileNotFoundException If the file doesn't exist.
+     * @throws IOException           On error reading the file.
+     */
+    public static World load(String fileName, int[] playerStartingLocation) throws IOException {
+        return load(fileName, playerStartingLocation, true);
+    }
+
+    /**
+     * Reads the map configuration.
+     *
+     * @param fileName               The configuration file to read, typically ending with .advcfg.
+     * @param playerStartingLocation Updated within this method to contain the starting row and
+     *                               column of the player.
+     * @param parallel               Whether a file of at least PARALLEL_THRESHOLD bytes may be
+     *                               parsed in parallel.
+     * @return The map, or null if the file contains no coordinates.
+     * @throws FileNotFoundException If the file doesn't exist.
+     * @throws IOException           On error reading the file.
+     */
+    public static World load(String fileName, int[] playerStartingLocation, boolean parallel)
+            throws IOException {
+        Charset charset = Charset.defaultCharset();
+        boolean utf8 = charset.equals(StandardCharsets.UTF_8);
+        if (!utf8 && !charset.equals(StandardCharsets.US_ASCII)) {
+            return Adventure.loadWorld(fileName, playerStartingLocation);
+        }
+        Path path = Paths.get(fileName);
+        if (!Files.isRegularFile(path)) {
+            throw new FileNotFoundException(fileName);
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int threads = parallel && size >= PARALLEL_THRESHOLD
+                    ? Runtime.getRuntime().availableProcessors()
+                    : 1;
+            long target = Math.max(1, Math.min(MAX_CHUNK, size / (threads * 4L)));
+            long[] bounds = chunkBounds(channel, size, target);
+            int chunkCount = bounds.length - 1;
+
+            Chunk[] chunks = new Chunk[chunkCount];
+            if (threads > 1 && chunkCount > 1) {
+                try {
+                    IntStream.range(0, chunkCount).parallel().forEach(i -> {
+                        try {
+                            chunks[i] = parse(channel, bounds[i], bounds[i + 1], i == 0, charset,
+                                    utf8);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            } else {
+                for (int i = 0; i < chunkCount; i++) {
+                    chunks[i] = parse(channel, bounds[i], bounds[i + 1], i == 0, charset, utf8);
+                }
+            }
+            for (Chunk chunk : chunks) {
+                if (chunk == null) {
+                    return Adventure.loadWorld(fileName, playerStartingLocation);
+                }
+            }
+            return merge(chunks, playerStartingLocation);
+        }
+    }
+
+    /**
+     * Splits the file into chunks of about the target size, each ending just after a \n (or at
+     * the end of the file) so that no line is split between chunks.
+     *
+     * @return The chunk boundaries, starting with 0 and ending with the file size.
+     */
+    private static long[] chunkBounds(FileChannel channel, long size, long target)
+            throws IOException {
+        long[] bounds = new long[8];
+        int count = 0;
+        bounds[count++] = 0;
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long position = 0;
+        while (position < size) {
+            long next = position + target;
+            if (next >= size) {
+                next = size;
+            } else {
+                // move the boundary past the next newline
+                boolean found = false;
+                while (!found && next < size) {
+                    probe.clear();
+                    int read = channel.read(probe, next);
+                    if (read <= 0) {
+                        next = size;
+                        break;
+                    }
+                    for (int i = 0; i < read; i++) {
+                        if (probe.get(i) == '\n') {
+                            next += i + 1;
+                            found = true;
+                            break;
+                        }
+                    }
+                    if (!found) {
+                        next += read;
+                    }
+                }
+                if (next - position > MAX_CHUNK * 2) {
+                    throw new IOException("Line too long near byte " + position);
+                }
+            }
+            if (count == bounds.length) {
+                bounds = Arrays.copyOf(bounds, count * 2);
+            }
+            bounds[count++] = next;
+            position = next;
+        }
+        if (count == 1) {
+            bounds[count++] = 0;
+        }
+        return Arrays.copyOf(bounds, count);
+    }
+
+    /**
+     * The locations read from one chunk of the file, in file order.
+     */
+    private static class Chunk {
+        int count;
+        int[] rows = new int[16];
+        int[] columns = new int[16];
+        // the index in distinct of each entry's fields, -1 for the size line
+        int[] lines = new int[16];
+        // the fields of each distinct line, in the order first read
+        final ArrayList<String[]> distinct = new ArrayList<>();
+        // the bytes after the first / of the cached lines, one after another, and their hashes
+        byte[] bytes = new byte[1024];
+        int[] offsets = new int[17];
+        int[] hashes = new int[16];
+        // open addressing table of the cached lines, their index in distinct + 1, 0 if empty
+        int[] table = new int[64];
+        // the fields of the rule and template lines
+        final ArrayList<String[]> rules = new ArrayList<>();
+        final ArrayList<String[]> templates = new ArrayList<>();
+
+        void add(int row, int column, int line) {
+            if (count == rows.length) {
+                rows = Arrays.copyOf(rows, count * 2);
+                columns = Arrays.copyOf(columns, count * 2);
+                lines = Arrays.copyOf(lines, count * 2);
+            }
+            rows[count] = row;
+            columns[count] = column;
+            lines[count] = line;
+            count++;
+        }
+
+        /**
+         * Finds the fields after the first / of a line among the lines read before, decoding
+         * and adding them if they are new.
+         *
+         * @return The index of the fields in distinct.
+         */
+        int line(ByteBuffer buffer, int slash, int lineEnd, Charset charset, byte[][] scratch) {
+            int hash = 1;
+            for (int i = slash + 1; i < lineEnd; i++) {
+                hash = 31 * hash + buffer.get(i);
+            }
+            int mask = table.length - 1;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            for (; table[slot] != 0; slot = (slot + 1) & mask) {
+                int line = table[slot] - 1;
+                if (hashes[line] == hash && sameBytes(line, buffer, slash + 1, lineEnd)) {
+                    return line;
+                }
+            }
+            int line = distinct.size();
+            distinct.add(parseFields(buffer, slash, lineEnd, charset, scratch));
+            if (line >= MAX_CACHED_LINES) {
+                return line;
+            }
+            int length = lineEnd - slash - 1;
+            if (line == hashes.length) {
+                hashes = Arrays.copyOf(hashes, line * 2);
+                offsets = Arrays.copyOf(offsets, line * 2 + 1);
+            }
+            if (offsets[line] + length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(offsets[line] + length, bytes.length * 2));
+            }
+            buffer.get(slash + 1, bytes, offsets[line], length);
+            offsets[line + 1] = offsets[line] + length;
+            hashes[line] = hash;
+            table[slot] = line + 1;
+            if (line * 2 >= table.length) {
+                rehash();
+            }
+            return line;
+        }
+
+        private boolean sameBytes(int line, ByteBuffer buffer, int from, int to) {
+            int offset = offsets[line];
+            if (offsets[line + 1] - offset != to - from) {
+                return false;
+            }
+            for (int i = from; i < to; i++) {
+                if (bytes[offset++] != buffer.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void rehash() {
+            table = new int[table.length * 2];
+            int mask = table.length - 1;
+            int cached = Math.min(distinct.size(), MAX_CACHED_LINES);
+            for (int line = 0; line < cached; line++) {
+                int slot = (hashes[line] ^ (hashes[line] >>> 16)) & mask;
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = line + 1;
+            }
+        }
+    }
+
+    /**
+     * Parses the lines of one chunk of the file.
+     *
+     * @param first Whether this is the first chunk, in which case the first coordinates are the
+     *              size of the map and their fields aren't decoded.
+     * @return The locations in the chunk, or null if the chunk isn't US-ASCII when it has to be.
+     */
+    private static Chunk parse(FileChannel channel, long from, long to, boolean first,
+            Charset charset, boolean utf8) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+        Chunk chunk = new Chunk();
+        byte[][] scratch = { new byte[256] };
+        boolean sizeRead = !first;
+        int[] coords = new int[2];
+        int limit = buffer.limit();
+        int position = 0;
+
+        while (position < limit) {
+            int lineStart = position;
+            int slash = -1;
+            int terminator = 0;
+            while (position < limit) {
+                byte b = buffer.get(position);
+                if (b < 0 && !utf8) {
+                    return null;
+                }
+                if (b == '\n') {
+                    terminator = 1;
+                    break;
+                } else if (b == '\r') {
+                    terminator = position + 1 < limit && buffer.get(position + 1) == '\n' ? 2 : 1;
+                    break;
+                } else if (b == '/') {
+                    if (slash < 0) {
+                        slash = position;
+                    }
+                } else if (utf8 && b == (byte) 0xC2) {
+                    // U+0085 next line
+                    if (position + 1 < limit && buffer.get(position + 1) == (byte) 0x85) {
+                        terminator = 2;
+                        break;
+                    }
+                } else if (utf8 && b == (byte) 0xE2) {
+                    // U+2028 line separator and U+2029 paragraph separator
+                    if (position + 2 < limit && buffer.get(position + 1) == (byte) 0x80
+                            && (buffer.get(position + 2) == (byte) 0xA8
+                                    || buffer.get(position + 2) == (byte) 0xA9)) {
+                        terminator = 3;
+                        break;
+                    }
+                }
+                position++;
+            }
+            int lineEnd = position;
+            position += terminator;
+
+            if (slash < 0) {
+                continue;
+            }
+            if (!parseCoordinates(buffer, lineStart, slash, coords)) {
+                if (isPrefix(EntityTypes.RULE_LINE, buffer, lineStart, slash)) {
+                    chunk.rules.add(parseFields(buffer, slash, lineEnd, charset, scratch));
+                } else if (isPrefix(EntityTemplates.TEMPLATE_LINE, buffer, lineStart, slash)) {
+                    chunk.templates.add(parseFields(buffer, slash, lineEnd, charset, scratch));
+                }
+                continue;
+            }
+            if (!sizeRead) {
+                // the size line, its fields are not kept
+                chunk.add(coords[Config.ROW], coords[Config.COLUMN], -1);
+                sizeRead = true;
+                continue;
+            }
+
+            chunk.add(coords[Config.ROW], coords[Config.COLUMN],
+                    chunk.line(buffer, slash, lineEnd, charset, scratch));
+        }
+        return chunk;
+    }
+
+    /**
+     * Splits the fields after the first / of a line and trims them like String.trim, as
+     * Adventure.parseFields does.
+     *
+     * @param scratch A buffer for decoding, grown in place if a field doesn't fit.
+     */
+    private static String[] parseFields(ByteBuffer buffer, int slash, int lineEnd, Charset charset,
+            byte[][] scratch) {
+        int fieldCount = 1;
+        for (int i = slash + 1; i < lineEnd; i++) {
+            if (buffer.get(i) == '/') {
+                fieldCount++;
+            }
+        }
+        String[] fields = new String[fieldCount];
+        int fieldStart = slash + 1;
+        for (int f = 0; f < fieldCount; f++) {
+            int fieldEnd = fieldStart;
+            while (fieldEnd < lineEnd && buffer.get(fieldEnd) != '/') {
+                fieldEnd++;
+            }
+            int start = fieldStart;
+            int end = fieldEnd;
+            while (start < end && (buffer.get(start) & 0xFF) <= ' ') {
+                start++;
+            }
+            while (end > start && (buffer.get(end - 1) & 0xFF) <= ' ') {
+                end--;
+            }
+            int length = end - start;
+            if (length == 0) {
+                fields[f] = "";
+            } else {
+                if (length > scratch[0].length) {
+                    scratch[0] = new byte[Math.max(length, scratch[0].length * 2)];
+                }
+                buffer.get(start, scratch[0], 0, length);
+                fields[f] = new String(scratch[0], 0, length, charset);
+            }
+            fieldStart = fieldEnd + 1;
+        }
+        return fields;
+    }
+
+    /**
+     * @return true if the bytes before the first / of a line are the prefix, such as
+     *         EntityTypes.RULE_LINE, ignoring case and surrounding white space.
+     */
+    private static boolean isPrefix(String rule, ByteBuffer buffer, int start, int end) {
+        while (start < end && (buffer.get(start) & 0xFF) <= ' ') {
+            start++;
+        }
+        while (end > start && (buffer.get(end - 1) & 0xFF) <= ' ') {
+            end--;
+        }
+        if (end - start != rule.length()) {
+            return false;
+        }
+        for (int i = 0; i < rule.length(); i++) {
+            if (Character.toLowerCase((char) buffer.get(start + i)) != rule.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Applies the rules of Adventure.parseCoordinates to the bytes before the first / of a line:
+     * the first comma must have a digit on either side, and then the first two runs of digits are
+     * the row and column.
+     *
+     * @return true if the line starts with coordinates, which are stored in coords.
+     */
+    private static boolean parseCoordinates(ByteBuffer buffer, int start, int end, int[] coords) {
+        int comma = -1;
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) == ',') {
+                comma = i;
+                break;
+            }
+        }
+        if (comma <= start || comma + 1 >= end || !isDigit(buffer.get(comma - 1))
+                || !isDigit(buffer.get(comma + 1))) {
+            return false;
+        }
+        int position = start;
+        for (int n = 0; n < 2; n++) {
+            while (!isDigit(buffer.get(position))) {
+                position++;
+            }
+            long value = 0;
+            while (position < end && isDigit(buffer.get(position))) {
+                value = value * 10 + (buffer.get(position) - '0');
+                if (value > Integer.MAX_VALUE) {
+                    throw new InputMismatchException("Coordinate out of range near byte " + start);
+                }
+                position++;
+            }
+            coords[n] = (int) value;
+        }
+        return true;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    /**
+     * Joins the chunks in file order into the map. The very first coordinates are the size of the
+     * map and are not a location.
+     */
+    private static World merge(Chunk[] chunks, int[] playerStartingLocation) {
+        int total = 0;
+        for (Chunk chunk : chunks) {
+            total += chunk.count;
+        }
+        if (total == 0) {
+            return null;
+        }
+
+        EntityTypes types = new EntityTypes();
+        EntityTemplates templates = new EntityTemplates();
+        for (Chunk chunk : chunks) {
+            for (String[] rule : chunk.rules) {
+                types.define(rule);
+            }
+            for (String[] template : chunk.templates) {
+                templates.define(template);
+            }
+        }
+
+        int rows = -1;
+        int columns = -1;
+        int count = 0;
+        int[] cellRows = new int[total - 1];
+        int[] cellCols = new int[total - 1];
+        String[][] cells = new String[total - 1][];
+        for (Chunk chunk : chunks) {
+            int from = 0;
+            if (rows < 0 && chunk.count > 0) {
+                rows = chunk.rows[0];
+                columns = chunk.columns[0];
+                from = 1;
+            }
+            String[][] resolved = new String[chunk.distinct.size()][];
+            boolean[] starts = new boolean[resolved.length];
+            for (int line = 0; line < resolved.length; line++) {
+                resolved[line] = templates.resolve(chunk.distinct.get(line));
+                starts[line] = resolved[line][Config.NAME].equalsIgnoreCase(Config.NAME_START);
+            }
+            for (int i = from; i < chunk.count; i++) {
+                int line = chunk.lines[i];
+                if (starts[line]) {
+                    playerStartingLocation[Config.ROW] = chunk.rows[i];
+                    playerStartingLocation[Config.COLUMN] = chunk.columns[i];
+                }
+                cells[count + i - from] = resolved[line];
+            }
+            int length = chunk.count - from;
+            System.arraycopy(chunk.rows, from, cellRows, count, length);
+            System.arraycopy(chunk.columns, from, cellCols, count, length);
+            count += length;
+        }
+        return World.of(rows, columns, cellRows, cellCols, cells, count, types);
+    }
+}
@@ -0,0 +1,321 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Latencies of the phases of a turn and counts of commands, outcomes and entered entity types,
+ * for seeing how the game behaves while it is played. Latencies go into LatencyHistograms, so
+ * recording doesn't allocate and percentiles are kept to about 3%.
+ *
+ * Nothing is recorded unless the game is run with -Dadventure.metrics=true. The calls in the game
+ * test Config.METRICS, which is final, so when it is false the JIT removes them along with their
+ * System.nanoTime calls. When it is true the metrics are published as the MXBean
+ * spock:type=Metrics, and can also be written to a file every Config.METRICS_PERIOD milliseconds.
+ *
+ * Typical use, timing the phases one after the other:
+ *
+ * <pre>
+ * long time = Metrics.start();
+ * ... move ...
+ * time = Metrics.lap(Metrics.MOVE, time);
+ * ... enter ...
+ * time = Metrics.lap(Metrics.ENTER, time);
+ * </pre>
+ */
+public class Metrics {
+
+    /**
+     * Phases of a turn: waiting for the player's command, moving (determineLocation), entering
+     * the new location (Rules.enter), starting its sounds, printing the result, and the whole turn
+     * from reading the command to printing the result.
+     */
+    public static final int READ = 0;
+    public static final int MOVE = 1;
+    public static final int ENTER = 2;
+    public static final int AUDIO = 3;
+    public static final int OUTPUT = 4;
+    public static final int TURN = 5;
+
+    private static final String[] PHASE_NAMES = { "read", "move", "enter", "audio", "output",
+            "turn" };
+
+    // Commands that are counted, anything else counts as "other"
+    private static final String[] COMMANDS = { Config.MOVE_UP, Config.MOVE_DOWN,
+            Config.MOVE_LEFT, Config.MOVE_RIGHT, Config.NEARBY, Config.DISPLAY_CORES,
+            Config.QUIT };
+
+    private static final LatencyHistogram[] phases = new LatencyHistogram[PHASE_NAMES.length];
+    private static final long[] outcomes = new long[Rules.OUTCOMES];
+    private static final long[] commands = new long[COMMANDS.length + 1];
+    // Counts by entity type, grown as types are entered
+    private static long[] types = new long[0];
+    private static EntityTypes typeNames;
+
+    private static ScheduledExecutorService exporter;
+    private static String exportFileName;
+
+    static {
+        for (int i = 0; i < phases.length; i++) {
+            phases[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * @return The time to pass to lap, 0 if metrics are off.
+     */
+    public static long start() {
+        return Config.METRICS ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the time a phase took.
+     *
+     * @param phase A phase, such as MOVE.
+     * @param since The time the phase started, from start or the previous lap.
+     * @return The time now, for the next lap; 0 if metrics are off.
+     */
+    public static long lap(int phase, long since) {
+        if (!Config.METRICS) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        record(phase, now - since);
+        return now;
+    }
+
+    /**
+     * Records the time a phase took.
+     *
+     * @param phase A phase, such as MOVE.
+     * @param nanos The time it took.
+     */
+    public static void record(int phase, long nanos) {
+        if (Config.METRICS) {
+            synchronized (Metrics.class) {
+                phases[phase].record(nanos);
+            }
+        }
+    }
+
+    /**
+     * Counts a command typed by the player.
+     *
+     * @param command The command, trimmed and lower case.
+     */
+    public static void command(String command) {
+        if (Config.METRICS) {
+            int i = 0;
+            while (i < COMMANDS.length && !COMMANDS[i].equals(command)) {
+                i++;
+            }
+            synchronized (Metrics.class) {
+                commands[i]++;
+            }
+        }
+    }
+
+    /**
+     * Counts the outcome of entering a location and the type of the location.
+     *
+     * @param entityTypes The rule table of the map.
+     * @param type        The type of the location entered.
+     * @param outcome     The outcome, from Rules.enter.
+     */
+    public static void entered(EntityTypes entityTypes, int type, int outcome) {
+        if (Config.METRICS) {
+            synchronized (Metrics.class) {
+                outcomes[outcome]++;
+                if (type >= types.length) {
+                    types = Arrays.copyOf(types, Math.max(type + 1, entityTypes.count()));
+                }
+                types[type]++;
+                typeNames = entityTypes;
+            }
+        }
+    }
+
+    /**
+     * @return Every counter by name, in the order of the report.
+     */
+    public static synchronized Map<String, Long> counters() {
+        Map<String, Long> counters = new LinkedHashMap<>();
+        for (int i = 0; i < outcomes.length; i++) {
+            counters.put("outcome." + Rules.outcomeName(i), outcomes[i]);
+        }
+        for (int type = 0; type < types.length; type++) {
+            counters.put("type." + typeName(type), types[type]);
+        }
+        for (int i = 0; i < commands.length; i++) {
+            counters.put("command." + (i < COMMANDS.length ? COMMANDS[i] : "other"), commands[i]);
+        }
+        return counters;
+    }
+
+    private static String typeName(int type) {
+        String name = typeNames == null ? null : typeNames.name(type);
+        return name != null ? name : type == EntityTypes.EMPTY ? "empty" : "#" + type;
+    }
+
+    /**
+     * @return The latencies of each phase, in microseconds, followed by the counters.
+     */
+    public static synchronized String report() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%-10s %10s %10s %10s %10s %10s %10s%n", "phase (us)", "count",
+                "mean", "50%", "99%", "99.9%", "max"));
+        for (int i = 0; i < phases.length; i++) {
+            LatencyHistogram phase = phases[i];
+            out.append(String.format("%-10s %10d %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                    PHASE_NAMES[i], phase.count(), phase.mean() / 1000,
+                    phase.percentile(0.5) / 1000.0, phase.percentile(0.99) / 1000.0,
+                    phase.percentile(0.999) / 1000.0, phase.max() / 1000.0));
+        }
+        for (Map.Entry<String, Long> counter : counters().entrySet()) {
+            out.append(counter.getKey()).append(' ').append(counter.getValue())
+                    .append(System.lineSeparator());
+        }
+        return out.toString();
+    }
+
+    /**
+     * Forgets every latency and count recorded so far.
+     */
+    public static synchronized void reset() {
+        for (LatencyHistogram phase : phases) {
+            phase.reset();
+        }
+        Arrays.fill(outcomes, 0);
+        Arrays.fill(commands, 0);
+        Arrays.fill(types, 0);
+    }
+
+    /**
+     * Publishes the metrics as the MXBean spock:type=Metrics. Does nothing if metrics are off or
+     * the MXBean is already published.
+     */
+    public static void registerMBean() {
+        if (!Config.METRICS) {
+            return;
+        }
+        try {
+            ObjectName name = new ObjectName("spock:type=Metrics");
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new MXBean(), name);
+            }
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes the report to a file every Config.METRICS_PERIOD milliseconds, from a daemon thread,
+     * until close. Does nothing if metrics are off.
+     *
+     * @param fileName The name of the file, replaced each time.
+     */
+    public static synchronized void export(String fileName) {
+        if (!Config.METRICS || exporter != null) {
+            return;
+        }
+        exportFileName = fileName;
+        exporter = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "metrics-export");
+            thread.setDaemon(true);
+            return thread;
+        });
+        exporter.scheduleAtFixedRate(Metrics::write, Config.METRICS_PERIOD,
+                Config.METRICS_PERIOD, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops exporting, writing the report one last time.
+     */
+    public static void close() {
+        ScheduledExecutorService stopping;
+        synchronized (Metrics.class) {
+            stopping = exporter;
+            exporter = null;
+        }
+        if (stopping != null) {
+            stopping.shutdownNow();
+            write();
+        }
+    }
+
+    /**
+     * Writes the report to the export file, through a temporary file so that a reader never sees
+     * half a report.
+     */
+    private static void write() {
+        String report = report();
+        try {
+            Path file = Paths.get(exportFileName);
+            Path temporary = Paths.get(exportFileName + ".tmp");
+            Files.write(temporary, report.getBytes(StandardCharsets.UTF_8));
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * The metrics as seen over JMX.
+     */
+    private static class MXBean implements MetricsMXBean {
+
+        @Override
+        public long getTurns() {
+            synchronized (Metrics.class) {
+                return phases[TURN].count();
+            }
+        }
+
+        @Override
+        public long getTurnMedianNanos() {
+            synchronized (Metrics.class) {
+                return phases[TURN].percentile(0.5);
+            }
+        }
+
+        @Override
+        public long getTurn99thPercentileNanos() {
+            synchronized (Metrics.class) {
+                return phases[TURN].percentile(0.99);
+            }
+        }
+
+        @Override
+        public long getTurnMaxNanos() {
+            synchronized (Metrics.class) {
+                return phases[TURN].max();
+            }
+        }
+
+        @Override
+        public Map<String, Long> getCounters() {
+            return counters();
+        }
+
+        @Override
+        public String getReport() {
+            return report();
+        }
+
+        @Override
+        public void reset() {
+            Metrics.reset();
+        }
+    }
+}
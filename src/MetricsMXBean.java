@@ -0,0 +1,43 @@
+import java.util.Map;
+
+/**
+ * The metrics of a running game as seen over JMX, for example in JConsole under spock:type=Metrics.
+ * Latencies are in nanoseconds. See Metrics.
+ */
+public interface MetricsMXBean {
+
+    /**
+     * @return The number of turns played.
+     */
+    long getTurns();
+
+    /**
+     * @return The median time to play a turn, from reading the command to printing the result.
+     */
+    long getTurnMedianNanos();
+
+    /**
+     * @return The 99th percentile of the time to play a turn.
+     */
+    long getTurn99thPercentileNanos();
+
+    /**
+     * @return The longest time to play a turn.
+     */
+    long getTurnMaxNanos();
+
+    /**
+     * @return Every counter by name, such as "outcome.WON", "type.spock" or "command.w".
+     */
+    Map<String, Long> getCounters();
+
+    /**
+     * @return The report that is written to the -metrics file.
+     */
+    String getReport();
+
+    /**
+     * Forgets every latency and count recorded so far.
+     */
+    void reset();
+}
@@ -0,0 +1,267 @@
+import java.util.Random;
+
+/**
+ * A World made of an immutable base map shared by any number of overlays, and the locations this
+ * overlay changed, kept in a LongObjectMap keyed by packed location. The base is never written
+ * to, so a game (or thousands of what-if branches of one, see fork) can change the map without
+ * copying it, and a Snapshot of the changes costs the number of changes rather than the area of
+ * the map.
+ *
+ * Like the base, an overlay doesn't change what a location does: an energy core picked up or a
+ * Klingon defeated stays where it is. An overlay made to use them up (see World.claim) empties the
+ * location in the overlay instead, so it is one of the changes a Snapshot saves.
+ *
+ * Until something is changed every call goes to the base, so the precomputed nearby masks of a
+ * DenseWorld and its index of empty locations are used, and picking an empty location draws the
+ * same random numbers as the base. After a change, nearby masks are computed from the locations,
+ * and the first pick builds the overlay's own FreeCellIndex of the map as it is then, which set
+ * keeps up to date, so picking stays constant time. A fork builds its own index when it first
+ * picks, so forks that never do cost nothing for it. A map too large for an index, one that
+ * World.prefersDense would store sparsely, is picked from by sampling random locations like a
+ * SparseWorld instead.
+ */
+public class OverlayWorld extends World {
+
+    private final World base;
+    private final boolean usesUp;
+    private final LongObjectMap<Cell> changes;
+    private long populated;
+    // the empty locations of the overlaid map, null until a pick needs them
+    private FreeCellIndex freeCells;
+
+    /**
+     * A changed location: its fields/attributes, null if it was emptied, and their type.
+     */
+    private static final class Cell {
+        final String[] fields;
+        final int type;
+
+        Cell(String[] fields, int type) {
+            this.fields = fields;
+            this.type = type;
+        }
+    }
+
+    /**
+     * Creates an overlay with no changes, where nothing is used up.
+     *
+     * @param base The map, which must not be changed while overlays use it.
+     */
+    public OverlayWorld(World base) {
+        this(base, false);
+    }
+
+    /**
+     * Creates an overlay with no changes.
+     *
+     * @param base   The map, which must not be changed while overlays use it.
+     * @param usesUp Whether energy cores picked up and Klingons defeated are emptied, see claim.
+     */
+    public OverlayWorld(World base, boolean usesUp) {
+        this(base, usesUp, 16);
+    }
+
+    private OverlayWorld(World base, boolean usesUp, int expected) {
+        super(base.rows(), base.columns(), base.types());
+        this.base = base;
+        this.usesUp = usesUp;
+        this.changes = new LongObjectMap<>(expected);
+        this.populated = base.populated();
+    }
+
+    /**
+     * @return The map this overlays.
+     */
+    public World base() {
+        return base;
+    }
+
+    /**
+     * @return A new overlay of the same base with the same changes, which are then changed
+     *         independently of this one's.
+     */
+    public OverlayWorld fork() {
+        OverlayWorld fork = new OverlayWorld(base, usesUp, changes.size());
+        changes.forEach((key, cell) -> fork.changes.put(key, cell));
+        fork.populated = populated;
+        return fork;
+    }
+
+    @Override
+    public String[] get(int row, int column) {
+        return overlaid(row, column);
+    }
+
+    /**
+     * @return The fields/attributes of the location in this overlay, which a subclass's get may
+     *         add to.
+     */
+    private String[] overlaid(int row, int column) {
+        if (changes.size() > 0) {
+            Cell cell = changes.get(Location.pack(row, column));
+            if (cell != null) {
+                return cell.fields;
+            }
+        }
+        return base.get(row, column);
+    }
+
+    @Override
+    public int type(int row, int column) {
+        if (changes.size() > 0) {
+            Cell cell = changes.get(Location.pack(row, column));
+            if (cell != null) {
+                return cell.type;
+            }
+        }
+        return base.type(row, column);
+    }
+
+    @Override
+    public int nearbyMask(int row, int column) {
+        return changes.size() == 0 ? base.nearbyMask(row, column) : super.nearbyMask(row, column);
+    }
+
+    @Override
+    public void set(int row, int column, String[] fields) {
+        checkBounds(row, column);
+        boolean wasPopulated = get(row, column) != null;
+        long key = Location.pack(row, column);
+        String[] original = base.get(row, column);
+        if (fields == original) {
+            // back to the base
+            changes.remove(key);
+        } else {
+            changes.put(key, new Cell(fields, fields == null ? EntityTypes.EMPTY
+                    : types.resolve(fields)));
+        }
+        populated += (fields != null ? 1 : 0) - (wasPopulated ? 1 : 0);
+        if (freeCells != null) {
+            if (fields == null) {
+                freeCells.add(row, column);
+            } else {
+                freeCells.remove(row, column);
+            }
+        }
+    }
+
+    /**
+     * Empties the location in the overlay if this overlay uses things up, otherwise leaves it as
+     * it is like any other world.
+     */
+    @Override
+    public boolean claim(int row, int column) {
+        if (usesUp) {
+            set(row, column, null);
+        }
+        return true;
+    }
+
+    /**
+     * @return true if energy cores picked up and Klingons defeated are emptied in the overlay.
+     */
+    public boolean usesUp() {
+        return usesUp;
+    }
+
+    /**
+     * @return The number of locations changed from the base.
+     */
+    public int changeCount() {
+        return changes.size();
+    }
+
+    /**
+     * Calls the visitor with each location changed from the base, with null fields/attributes for
+     * a location that was emptied.
+     *
+     * @param visitor Called with the row, column and fields/attributes of each change.
+     */
+    public void forEachChange(LocationVisitor visitor) {
+        changes.forEach((key, cell) -> visitor.visit(Location.row(key), Location.column(key),
+                cell.fields));
+    }
+
+    /**
+     * Undoes every change, back to the base map.
+     */
+    public void clearChanges() {
+        changes.clear();
+        populated = base.populated();
+        freeCells = null;
+    }
+
+    @Override
+    public long populated() {
+        return populated;
+    }
+
+    @Override
+    public long pickFree(Random rand) {
+        if (changes.size() == 0) {
+            return base.pickFree(rand);
+        }
+        // populated(), which a subclass may add to, such as PatrolWorld's patrols
+        if (populated() >= (long) rows * columns) {
+            return Location.NONE;
+        }
+        if (freeCells == null && World.prefersDense(rows, columns, populated)) {
+            freeCells = buildFreeCells();
+        }
+        if (freeCells != null) {
+            return freeCells.pick(rand);
+        }
+        int row;
+        int column;
+        do {
+            row = rand.nextInt(rows);
+            column = rand.nextInt(columns);
+        } while (get(row, column) != null);
+        return Location.pack(row, column);
+    }
+
+    /**
+     * Builds the index of the empty locations in this overlay, in row-major order.
+     */
+    private FreeCellIndex buildFreeCells() {
+        FreeCellIndex index = new FreeCellIndex(rows, columns);
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                if (overlaid(row, column) == null) {
+                    index.add(row, column);
+                }
+            }
+        }
+        return index;
+    }
+
+    @Override
+    public boolean isListable() {
+        return base.isListable();
+    }
+
+    @Override
+    public void forEachPopulated(LocationVisitor visitor) {
+        base.forEachPopulated((row, column, fields) -> {
+            if (changes.size() == 0 || changes.get(Location.pack(row, column)) == null) {
+                visitor.visit(row, column, fields);
+            }
+        });
+        changes.forEach((key, cell) -> {
+            if (cell.fields != null) {
+                visitor.visit(Location.row(key), Location.column(key), cell.fields);
+            }
+        });
+    }
+
+    /**
+     * @return The map as a String[][][], always allocated so that the base can't be changed
+     *         through it.
+     */
+    @Override
+    public String[][][] toArray() {
+        String[][][] map = new String[rows][columns][];
+        forEachPopulated((row, column, fields) -> map[row][column] = fields);
+        return map;
+    }
+}
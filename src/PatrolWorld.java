@@ -0,0 +1,415 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A map whose enemies move. Patrols are entities, such as Klingons, that step one location each
+ * tick in their heading, turning now and then at random and whenever the way is blocked by a
+ * populated location or another patrol. Looking up a location (get, type, nearbyMask) finds the
+ * patrol standing on it, so Rules.enter and Rules.sense treat a patrol just like a location of
+ * the map with the same fields/attributes, and a Game on a PatrolWorld ticks it after each move
+ * (see Game.play).
+ *
+ * The patrols are stored as parallel arrays (row, column, heading, fields/attributes, type), and
+ * indexed by a uniform grid of BUCKET_SIZE x BUCKET_SIZE buckets, kept in a hash table by
+ * bucket with a doubly linked list of the patrols in each. A patrol is only moved between lists
+ * when it crosses into another bucket. So a tick costs a few hash lookups per patrol, and memory
+ * grows with the number of patrols, never with the area of the map.
+ *
+ * This is an OverlayWorld: the locations of the map a patrol started from (see mobilize) are
+ * emptied in the overlay, and the base map isn't changed. A patrol that is defeated (see claim)
+ * is removed. fork and Snapshot leave the patrols out. Like the other Worlds it isn't thread
+ * safe; tick it from the thread playing.
+ */
+public class PatrolWorld extends OverlayWorld {
+
+    /**
+     * The number of rows and columns of a bucket of the spatial index.
+     */
+    public static final int BUCKET_SIZE = 8;
+
+    /**
+     * A patrol turns at random about once in this many ticks.
+     */
+    public static final int TURN_CHANCE = 8;
+
+    private static final int BUCKET_SHIFT = Integer.numberOfTrailingZeros(BUCKET_SIZE);
+    private static final int NONE = -1;
+
+    private final Random rand;
+
+    // the patrols
+    private int count;
+    private int[] patrolRows = new int[16];
+    private int[] patrolColumns = new int[16];
+    private byte[] headings = new byte[16];
+    private String[][] patrolFields = new String[16][];
+    private int[] patrolTypes = new int[16];
+    // the next and previous patrol in the same bucket
+    private int[] next = new int[16];
+    private int[] previous = new int[16];
+
+    // the buckets with patrols in them, open addressing: the key of the bucket and its first
+    // patrol, NONE if the slot is empty
+    private long[] bucketKeys = new long[64];
+    private int[] bucketHeads = new int[64];
+    private int bucketMask = 63;
+    private int buckets;
+
+    /**
+     * Creates a map with no patrols yet, see mobilize and spawn.
+     *
+     * @param base The map, which isn't changed.
+     * @param seed The seed for the patrols' movements.
+     */
+    public PatrolWorld(World base, long seed) {
+        super(base);
+        this.rand = new GameRandom(seed);
+        Arrays.fill(bucketHeads, NONE);
+    }
+
+    /**
+     * Makes the Klingons and Khan of a map patrol, as the -patrol option of the games does, and
+     * adds more Klingons.
+     *
+     * @param map   The map, which must be listable (see isListable) and isn't changed.
+     * @param seed  The seed for the patrols' movements.
+     * @param extra The number of Klingons to add, copies of the map's first (none if it has no
+     *              Klingons).
+     * @return The map with the patrols.
+     * @throws IllegalArgumentException If the map can't be listed, such as a ChunkedWorld.
+     */
+    public static PatrolWorld of(World map, long seed, int extra) {
+        PatrolWorld world = new PatrolWorld(map, seed);
+        int klingons = world.mobilize(EntityTypes.FIGHT);
+        world.mobilize(EntityTypes.LOSE);
+        if (klingons > 0 && extra > 0) {
+            world.spawn(world.patrolFields[0], extra);
+        }
+        return world;
+    }
+
+    /**
+     * Makes every location of the map whose type has an action a patrol, starting from that
+     * location, which is emptied.
+     *
+     * @param action An action such as EntityTypes.FIGHT.
+     * @return The number of patrols added.
+     * @throws IllegalArgumentException If the map can't be listed, such as a ChunkedWorld.
+     */
+    public int mobilize(int action) {
+        requireListable(base(), "patrolled");
+        int before = count;
+        base().forEachPopulated((row, column, fields) -> {
+            if (types.action(base().type(row, column)) == action && at(row, column) == NONE) {
+                add(fields, base().type(row, column), row, column);
+            }
+        });
+        for (int i = before; i < count; i++) {
+            super.set(patrolRows[i], patrolColumns[i], null);
+        }
+        return count - before;
+    }
+
+    /**
+     * Adds patrols at random empty locations.
+     *
+     * @param fields The fields/attributes of the patrols, such as a Klingon's.
+     * @param number The number of patrols.
+     * @return The number added, fewer if the map filled up.
+     */
+    public int spawn(String[] fields, int number) {
+        int type = types.resolve(fields);
+        for (int i = 0; i < number; i++) {
+            long picked = pickFree(rand);
+            if (picked == Location.NONE) {
+                return i;
+            }
+            add(fields, type, Location.row(picked), Location.column(picked));
+        }
+        return number;
+    }
+
+    private void add(String[] fields, int type, int row, int column) {
+        if (count == patrolRows.length) {
+            int capacity = count * 2;
+            patrolRows = Arrays.copyOf(patrolRows, capacity);
+            patrolColumns = Arrays.copyOf(patrolColumns, capacity);
+            headings = Arrays.copyOf(headings, capacity);
+            patrolFields = Arrays.copyOf(patrolFields, capacity);
+            patrolTypes = Arrays.copyOf(patrolTypes, capacity);
+            next = Arrays.copyOf(next, capacity);
+            previous = Arrays.copyOf(previous, capacity);
+        }
+        int patrol = count++;
+        patrolRows[patrol] = row;
+        patrolColumns[patrol] = column;
+        headings[patrol] = (byte) rand.nextInt(4);
+        patrolFields[patrol] = fields;
+        patrolTypes[patrol] = type;
+        link(patrol);
+    }
+
+    /**
+     * Removes the patrol at the location, such as a Klingon the player defeated. Anything else,
+     * such as an energy core, stays where it is.
+     */
+    @Override
+    public boolean claim(int row, int column) {
+        int patrol = at(row, column);
+        if (patrol == NONE) {
+            return super.claim(row, column);
+        }
+        remove(patrol);
+        return true;
+    }
+
+    /**
+     * Removes a patrol, moving the last patrol into its place.
+     */
+    private void remove(int patrol) {
+        unlink(patrol);
+        int last = --count;
+        if (patrol != last) {
+            unlink(last);
+            patrolRows[patrol] = patrolRows[last];
+            patrolColumns[patrol] = patrolColumns[last];
+            headings[patrol] = headings[last];
+            patrolFields[patrol] = patrolFields[last];
+            patrolTypes[patrol] = patrolTypes[last];
+            link(patrol);
+        }
+        patrolFields[last] = null;
+    }
+
+    /**
+     * @return The number of patrols.
+     */
+    public int patrols() {
+        return count;
+    }
+
+    /**
+     * Moves every patrol one step.
+     */
+    public void tick() {
+        for (int patrol = 0; patrol < count; patrol++) {
+            int heading = headings[patrol];
+            if (rand.nextInt(TURN_CHANCE) == 0) {
+                heading = rand.nextInt(4);
+            }
+            int row = patrolRows[patrol];
+            int column = patrolColumns[patrol];
+            long target = Location.step(Location.pack(row, column), heading, rows, columns);
+            int targetRow = Location.row(target);
+            int targetColumn = Location.column(target);
+            if (super.get(targetRow, targetColumn) != null || at(targetRow, targetColumn) != NONE) {
+                // blocked, try another way next tick
+                headings[patrol] = (byte) rand.nextInt(4);
+                continue;
+            }
+            headings[patrol] = (byte) heading;
+            boolean crossed = bucket(targetRow, targetColumn) != bucket(row, column);
+            if (crossed) {
+                unlink(patrol);
+            }
+            patrolRows[patrol] = targetRow;
+            patrolColumns[patrol] = targetColumn;
+            if (crossed) {
+                link(patrol);
+            }
+        }
+    }
+
+    /**
+     * @param row    The row of the location.
+     * @param column The column of the location.
+     * @return The patrol at the location, or -1 if there is none.
+     */
+    public int at(int row, int column) {
+        if (buckets == 0) {
+            return NONE;
+        }
+        int slot = slot(bucket(row, column));
+        if (slot == NONE) {
+            return NONE;
+        }
+        for (int patrol = bucketHeads[slot]; patrol != NONE; patrol = next[patrol]) {
+            if (patrolRows[patrol] == row && patrolColumns[patrol] == column) {
+                return patrol;
+            }
+        }
+        return NONE;
+    }
+
+    private static long bucket(int row, int column) {
+        return Location.pack(row >>> BUCKET_SHIFT, column >>> BUCKET_SHIFT);
+    }
+
+    private int home(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & bucketMask;
+    }
+
+    /**
+     * @return The slot of a bucket, or NONE if it has no patrols.
+     */
+    private int slot(long key) {
+        for (int i = home(key); bucketHeads[i] != NONE; i = (i + 1) & bucketMask) {
+            if (bucketKeys[i] == key) {
+                return i;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Adds a patrol to the front of its bucket's list.
+     */
+    private void link(int patrol) {
+        long key = bucket(patrolRows[patrol], patrolColumns[patrol]);
+        int i = home(key);
+        while (bucketHeads[i] != NONE && bucketKeys[i] != key) {
+            i = (i + 1) & bucketMask;
+        }
+        previous[patrol] = NONE;
+        next[patrol] = bucketHeads[i];
+        if (bucketHeads[i] == NONE) {
+            bucketKeys[i] = key;
+            if (++buckets > bucketMask / 2) {
+                bucketHeads[i] = patrol;
+                next[patrol] = NONE;
+                rehash();
+                return;
+            }
+        } else {
+            previous[bucketHeads[i]] = patrol;
+        }
+        bucketHeads[i] = patrol;
+    }
+
+    /**
+     * Removes a patrol from its bucket's list, and the bucket when it empties.
+     */
+    private void unlink(int patrol) {
+        if (next[patrol] != NONE) {
+            previous[next[patrol]] = previous[patrol];
+        }
+        if (previous[patrol] != NONE) {
+            next[previous[patrol]] = next[patrol];
+            return;
+        }
+        int slot = slot(bucket(patrolRows[patrol], patrolColumns[patrol]));
+        bucketHeads[slot] = next[patrol];
+        if (next[patrol] == NONE) {
+            shiftBack(slot);
+            buckets--;
+        }
+    }
+
+    /**
+     * Fills an emptied slot with any following bucket that would otherwise become unreachable,
+     * as LongObjectMap does.
+     */
+    private void shiftBack(int gap) {
+        int i = gap;
+        while (true) {
+            i = (i + 1) & bucketMask;
+            if (bucketHeads[i] == NONE) {
+                break;
+            }
+            int home = home(bucketKeys[i]);
+            if (((i - home) & bucketMask) >= ((i - gap) & bucketMask)) {
+                bucketKeys[gap] = bucketKeys[i];
+                bucketHeads[gap] = bucketHeads[i];
+                gap = i;
+            }
+        }
+        bucketHeads[gap] = NONE;
+    }
+
+    /**
+     * Grows the table to more than twice the number of patrols, the most buckets there can be,
+     * so that linking them all again doesn't grow it again.
+     */
+    private void rehash() {
+        int capacity = bucketHeads.length;
+        while (capacity <= 2 * count) {
+            capacity *= 2;
+        }
+        bucketKeys = new long[capacity];
+        bucketHeads = new int[capacity];
+        Arrays.fill(bucketHeads, NONE);
+        bucketMask = capacity - 1;
+        buckets = 0;
+        for (int patrol = 0; patrol < count; patrol++) {
+            link(patrol);
+        }
+    }
+
+    @Override
+    public String[] get(int row, int column) {
+        int patrol = at(row, column);
+        return patrol != NONE ? patrolFields[patrol] : super.get(row, column);
+    }
+
+    @Override
+    public int type(int row, int column) {
+        int patrol = at(row, column);
+        return patrol != NONE ? patrolTypes[patrol] : super.type(row, column);
+    }
+
+    /**
+     * Patrols only stand on empty locations of the map, so the mask is the map's and the
+     * patrols' together.
+     */
+    @Override
+    public int nearbyMask(int row, int column) {
+        int mask = super.nearbyMask(row, column);
+        if (buckets == 0) {
+            return mask;
+        }
+        int up = row == 0 ? rows - 1 : row - 1;
+        int down = row == rows - 1 ? 0 : row + 1;
+        int left = column == 0 ? columns - 1 : column - 1;
+        int right = column == columns - 1 ? 0 : column + 1;
+        return mask | (hasNearbyText(patrol(up, column)) ? 1 << Rules.UP : 0)
+                | (hasNearbyText(patrol(down, column)) ? 1 << Rules.DOWN : 0)
+                | (hasNearbyText(patrol(row, left)) ? 1 << Rules.LEFT : 0)
+                | (hasNearbyText(patrol(row, right)) ? 1 << Rules.RIGHT : 0);
+    }
+
+    private String[] patrol(int row, int column) {
+        int patrol = at(row, column);
+        return patrol != NONE ? patrolFields[patrol] : null;
+    }
+
+    @Override
+    public long populated() {
+        return super.populated() + count;
+    }
+
+    /**
+     * Picks a location that is empty and has no patrol, or Location.NONE if there is none.
+     */
+    @Override
+    public long pickFree(Random rand) {
+        // the map's own pickFree doesn't know about the patrols, so it can't tell the map is full
+        if (populated() >= (long) rows * columns) {
+            return Location.NONE;
+        }
+        long picked;
+        do {
+            picked = super.pickFree(rand);
+        } while (picked != Location.NONE
+                && at(Location.row(picked), Location.column(picked)) != NONE);
+        return picked;
+    }
+
+    @Override
+    public void forEachPopulated(LocationVisitor visitor) {
+        super.forEachPopulated(visitor);
+        for (int patrol = 0; patrol < count; patrol++) {
+            visitor.visit(patrolRows[patrol], patrolColumns[patrol], patrolFields[patrol]);
+        }
+    }
+}
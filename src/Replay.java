@@ -0,0 +1,306 @@
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Replays a script of player commands, one per line as they would be typed into the console game,
+ * without prompts, sounds or the console. It is intended for regression and load tests, which
+ * used to pipe keystrokes into Adventure.
+ *
+ * The script is read in one go and turned into Game command codes before the first turn, and
+ * all output goes through a single buffered writer. Only the text format listens to the games
+ * with a TextView; the others format nothing but their own lines. With the same seed, the text
+ * output of a game is byte for byte what the console game prints with -s and -mute, less its "> "
+ * prompts. When a game ends before the script does, the next game starts at the starting location
+ * with the next seed (seed + 1, seed + 2, ...), so a long script replays as many games as it
+ * takes; the end of the script ends the last game like a quit.
+ *
+ * The output is the text of the games (text), one line per command (csv: game, turn, command,
+ * row, column, energy cores and the outcome of a move), or only a summary of all the games
+ * (summary). The elapsed time goes to System.err, so the output itself is deterministic.
+ *
+ * With -infinite the games are played on a ChunkedWorld generated from the seed around the
+ * configured map, as the console game's -infinite does. With -patrol the Klingons and Khan move,
+ * with the given number of Klingons added, as the console game's -patrol does.
+ *
+ * Usage: java Replay -r script_filename [-c configuration_filename] [-s seed]
+ * [-f text|csv|summary] [-o output_filename] [-infinite | -patrol extra_klingons]
+ */
+public class Replay {
+
+    public static final String TEXT = "text";
+    public static final String CSV = "csv";
+    public static final String SUMMARY = "summary";
+
+    // Names of the Game command codes, for the CSV
+    private static final String[] COMMAND_NAMES = { Config.MOVE_UP, Config.MOVE_DOWN,
+            Config.MOVE_LEFT, Config.MOVE_RIGHT, Config.NEARBY, Config.DISPLAY_CORES, Config.QUIT,
+            "other" };
+
+    // Output is written whenever this many characters have built up
+    private static final int FLUSH_SIZE = 1 << 16;
+
+    private final World world;
+    private final int[] start;
+    private final String format;
+    private final Writer out;
+    // shows the games for the text format, null for the others
+    private final TextView view;
+    private final StringBuilder text;
+    private final String newline = System.lineSeparator();
+
+    private long games;
+    private long turns;
+    private long commandCount;
+    private final long[] outcomes = new long[Rules.OUTCOMES];
+    private final long[] endings = new long[Rules.OUTCOMES];
+    private long unfinished;
+    // the outcome of the last location entered, -1 if the last command wasn't a move
+    private int outcome;
+
+    /**
+     * @param world  The map.
+     * @param start  The starting location of every game.
+     * @param format TEXT, CSV or SUMMARY.
+     * @param out    Where the output is written; it is flushed but not closed.
+     */
+    public Replay(World world, int[] start, String format, Writer out) {
+        this.world = world;
+        this.start = start;
+        this.format = format;
+        this.out = out;
+        view = format.equals(TEXT) ? new TextView(null) : null;
+        text = view != null ? view.text() : new StringBuilder(FLUSH_SIZE + 1024);
+    }
+
+    /**
+     * Turns the lines of a script into command codes: Rules.UP, DOWN, LEFT, RIGHT and SENSE, and
+     * the codes for showing the energy cores, quitting and anything else. Lines are trimmed and
+     * lower cased like the console game does, and end with "\n", "\r\n" or "\r".
+     *
+     * @param script The script.
+     * @return The command codes, one per line.
+     */
+    public static byte[] parse(String script) {
+        byte[] commands = new byte[16];
+        int count = 0;
+        int position = 0;
+        int length = script.length();
+        while (position < length) {
+            int end = position;
+            while (end < length && script.charAt(end) != '\n' && script.charAt(end) != '\r') {
+                end++;
+            }
+            if (count == commands.length) {
+                commands = Arrays.copyOf(commands, count * 2);
+            }
+            commands[count++] = (byte) Game.command(script.substring(position, end).trim()
+                    .toLowerCase());
+            if (end < length - 1 && script.charAt(end) == '\r' && script.charAt(end + 1) == '\n') {
+                end++;
+            }
+            position = end + 1;
+        }
+        return Arrays.copyOf(commands, count);
+    }
+
+    /**
+     * Plays the commands, game after game, and writes the output.
+     *
+     * @param commands The command codes, from parse.
+     * @param seed     The seed of the first game.
+     */
+    public void replay(byte[] commands, long seed) throws IOException {
+        if (format.equals(CSV)) {
+            text.append("game,turn,command,row,column,cores,outcome").append(newline);
+        }
+        GameState state = new GameState(start[Config.ROW], start[Config.COLUMN],
+                new GameRandom());
+        int next = 0;
+        int previous;
+        do {
+            previous = next;
+            state.reset(start[Config.ROW], start[Config.COLUMN], seed + games);
+            next = play(state, commands, next);
+            // a game that ends as it starts would never use up the script
+        } while (next < commands.length && next > previous);
+        if (format.equals(SUMMARY)) {
+            summarize();
+        }
+        flush();
+    }
+
+    /**
+     * Plays one game, the console game's loop.
+     *
+     * @return The index of the first command after the game.
+     */
+    private int play(GameState state, byte[] commands, int next) throws IOException {
+        Game game = new Game(world, state);
+        if (view != null) {
+            game.subscribe(view);
+        }
+        game.subscribe((event, s) -> {
+            if (event < Rules.OUTCOMES) {
+                outcomes[event]++;
+                outcome = event;
+            }
+        });
+        outcome = -1;
+        game.start();
+        count(state, "start");
+        while (!game.isFinished() && next < commands.length) {
+            byte command = commands[next++];
+            commandCount++;
+            outcome = -1;
+            game.play(command);
+            count(state, COMMAND_NAMES[command]);
+            if (text.length() >= FLUSH_SIZE) {
+                flush();
+            }
+        }
+        if (view != null) {
+            text.append("Thanks for playing!").append(newline);
+        }
+        games++;
+        turns += state.turns;
+        if (outcome >= 0 && Rules.isFinished(outcome)) {
+            endings[outcome]++;
+        } else {
+            unfinished++;
+        }
+        return next;
+    }
+
+    /**
+     * Writes a command's CSV line.
+     */
+    private void count(GameState state, String command) {
+        if (format.equals(CSV)) {
+            text.append(games).append(',').append(state.turns).append(',').append(command)
+                    .append(',').append(state.row()).append(',').append(state.column())
+                    .append(',').append(state.cores).append(',')
+                    .append(outcome >= 0 ? Rules.outcomeName(outcome) : "").append(newline);
+        }
+    }
+
+    private void summarize() {
+        text.append("Games: ").append(games).append(newline);
+        text.append("Commands: ").append(commandCount).append(", turns: ").append(turns)
+                .append(newline);
+        text.append("Won: ").append(endings[Rules.WON]).append(", lost (Khan): ")
+                .append(endings[Rules.LOST]).append(", lost fights (Klingons): ")
+                .append(endings[Rules.LOST_FIGHT]).append(", unfinished: ").append(unfinished)
+                .append(newline);
+        for (int outcome = 0; outcome < Rules.OUTCOMES; outcome++) {
+            text.append(Rules.outcomeName(outcome)).append(": ").append(outcomes[outcome])
+                    .append(newline);
+        }
+    }
+
+    private void flush() throws IOException {
+        out.append(text);
+        text.setLength(0);
+        out.flush();
+    }
+
+    /**
+     * Replays a script from the command line.
+     *
+     * @param args See the class comment.
+     */
+    public static void main(String[] args) throws IOException {
+        String configurationFile = "src/StarTrek.advcfg";
+        String scriptFile = null;
+        String outputFile = null;
+        String format = TEXT;
+        long seed = 0;
+        boolean infinite = false;
+        int patrol = -1;
+        for (int i = 0; i < args.length; ++i) {
+            if (args[i].equalsIgnoreCase("-c")) {
+                configurationFile = args[++i];
+            } else if (args[i].equalsIgnoreCase("-r")) {
+                scriptFile = args[++i];
+            } else if (args[i].equalsIgnoreCase("-s")) {
+                seed = Long.parseLong(args[++i]);
+            } else if (args[i].equalsIgnoreCase("-f")) {
+                format = args[++i].toLowerCase();
+            } else if (args[i].equalsIgnoreCase("-o")) {
+                outputFile = args[++i];
+            } else if (args[i].equalsIgnoreCase("-infinite")) {
+                infinite = true;
+            } else if (args[i].equalsIgnoreCase("-patrol")) {
+                patrol = Integer.parseInt(args[++i]);
+            }
+        }
+        if (scriptFile == null) {
+            System.out.println("Usage: java Replay -r script_filename [-c configuration_filename] "
+                    + "[-s seed] [-f text|csv|summary] [-o output_filename] "
+                    + "[-infinite | -patrol extra_klingons]");
+            return;
+        }
+        if (!format.equals(TEXT) && !format.equals(CSV) && !format.equals(SUMMARY)) {
+            System.out.println("Error, unknown format: " + format);
+            return;
+        }
+        if (infinite && patrol >= 0) {
+            System.out.println("Error, -patrol can't be used with -infinite");
+            return;
+        }
+
+        int[] start = new int[] { 0, 0 };
+        World world;
+        byte[] commands;
+        try {
+            if (MapCompiler.isCompiled(configurationFile)) {
+                world = MapCompiler.load(configurationFile, start);
+            } else {
+                world = MappedConfigLoader.load(configurationFile, start);
+            }
+            if (world == null) {
+                return;
+            }
+        } catch (IOException e) {
+            System.out.println("Error, unable to load file: " + configurationFile);
+            return;
+        } catch (IllegalArgumentException e) {
+            // such as a reference to an undeclared template or an unknown type
+            System.out.println("Error, bad map in file: " + configurationFile + ": "
+                    + e.getMessage());
+            return;
+        }
+        if (infinite) {
+            world = new ChunkedWorld(world, seed, ChunkedWorld.DEFAULT_CACHED_CHUNKS);
+        } else if (patrol >= 0) {
+            world = PatrolWorld.of(world, seed, patrol);
+        }
+        try {
+            commands = parse(new String(Files.readAllBytes(Paths.get(scriptFile)),
+                    Charset.defaultCharset()));
+        } catch (IOException e) {
+            System.out.println("Error, unable to load file: " + scriptFile);
+            return;
+        }
+
+        long begin = System.nanoTime();
+        OutputStream stream = outputFile != null ? new FileOutputStream(outputFile) : System.out;
+        Writer out = new BufferedWriter(new OutputStreamWriter(stream, Charset.defaultCharset()),
+                FLUSH_SIZE);
+        Replay replay = new Replay(world, start, format, out);
+        replay.replay(commands, seed);
+        if (outputFile != null) {
+            out.close();
+        }
+        long elapsed = System.nanoTime() - begin;
+        System.err.printf("Replayed %d commands in %d games in %d ms\n", replay.commandCount,
+                replay.games, elapsed / 1000000);
+    }
+}
@@ -0,0 +1,214 @@
+/**
+ * The rules of the game, without any printing or sounds. Each method works on a World and a
+ * GameState and reports what happened as one of the outcome constants, so the same rules serve
+ * the console game (Adventure), the headless Simulator and anything else that plays the game.
+ *
+ * What entering a location does is the action of its type in the world's EntityTypes. With the
+ * built in rules these are those of the original Adventure.enter: checked in this order, an
+ * empty location is quiet, an Config.RESULT_PHASER location gives an energy core, a
+ * Config.RESULT_RANDOM_MOVE location beams the player to a random empty location, "spock" wins,
+ * "khan" loses, and "klingon" loses unless the player has an energy core to fight with, which is
+ * used up. Anything else just describes itself.
+ *
+ * The energy core picked up and the Klingon defeated are claimed from the world (see
+ * World.claim), which in a SharedWorld uses them up for every player.
+ */
+public class Rules {
+
+    /**
+     * Directions of movement, and sensing nearby locations.
+     */
+    public static final int UP = 0;
+    public static final int DOWN = 1;
+    public static final int LEFT = 2;
+    public static final int RIGHT = 3;
+    public static final int SENSE = 4;
+
+    /**
+     * Outcomes of entering a location.
+     */
+    public static final int EMPTY = 0;
+    public static final int CORE_GAINED = 1;
+    public static final int BEAMED = 2;
+    public static final int WON = 3;
+    // entered a location whose action is EntityTypes.LOSE, such as Khan
+    public static final int LOST = 4;
+    // entered a fight, such as a Klingon, without an energy core
+    public static final int LOST_FIGHT = 5;
+    public static final int PHASER_FIGHT = 6;
+    public static final int DESCRIBED = 7;
+    // a beam with no empty location to go to
+    public static final int STRANDED = 8;
+    public static final int OUTCOMES = 9;
+
+    private static final String[] OUTCOME_NAMES = { "EMPTY", "CORE_GAINED", "BEAMED", "WON",
+            "LOST", "LOST_FIGHT", "PHASER_FIGHT", "DESCRIBED", "STRANDED" };
+
+    /**
+     * @param command A player command such as Config.MOVE_UP or Config.NEARBY.
+     * @return The direction (UP, DOWN, LEFT, RIGHT) or SENSE for the command, or -1 for any other
+     *         command.
+     */
+    public static int command(String command) {
+        switch (command) {
+            case Config.MOVE_UP:
+                return UP;
+            case Config.MOVE_DOWN:
+                return DOWN;
+            case Config.MOVE_LEFT:
+                return LEFT;
+            case Config.MOVE_RIGHT:
+                return RIGHT;
+            case Config.NEARBY:
+                return SENSE;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * @param outcome An outcome of enter.
+     * @return The name of the outcome's constant, such as "WON".
+     */
+    public static String outcomeName(int outcome) {
+        return OUTCOME_NAMES[outcome];
+    }
+
+    /**
+     * @param outcome An outcome of enter.
+     * @return true if the outcome ends the game.
+     */
+    public static boolean isFinished(int outcome) {
+        return outcome == WON || outcome == LOST || outcome == LOST_FIGHT;
+    }
+
+    /**
+     * Moves the location one step in the direction, wrapping at the edges of the map.
+     *
+     * @param world     The map.
+     * @param location  The location to change, indexes are Config.ROW and Config.COLUMN.
+     * @param direction UP, DOWN, LEFT or RIGHT.
+     */
+    public static void step(World world, int[] location, int direction) {
+        long packed = Location.pack(location[Config.ROW], location[Config.COLUMN]);
+        Location.unpack(step(world, packed, direction), location);
+    }
+
+    /**
+     * Moves a packed location one step in the direction, wrapping at the edges of the map.
+     *
+     * @param world     The map.
+     * @param location  The location, packed by Location.pack.
+     * @param direction UP, DOWN, LEFT or RIGHT.
+     * @return The packed location after the step.
+     */
+    public static long step(World world, long location, int direction) {
+        return Location.step(location, direction, world.rows(), world.columns());
+    }
+
+    /**
+     * Moves the player one step and enters the new location.
+     *
+     * @param world     The map.
+     * @param state     The game, its location and cores are updated.
+     * @param direction UP, DOWN, LEFT or RIGHT.
+     * @return The outcome of entering the new location.
+     */
+    public static int move(World world, GameState state, int direction) {
+        state.position = step(world, state.position, direction);
+        state.turns++;
+        return enter(world, state);
+    }
+
+    /**
+     * The player enters the location they are at. The fields/attributes and type of the location
+     * are left in state.entered and state.enteredType.
+     *
+     * @param world The map.
+     * @param state The game, its location and cores are updated.
+     * @return The outcome of entering the location.
+     */
+    public static int enter(World world, GameState state) {
+        int row = state.row();
+        int column = state.column();
+        state.entered = world.get(row, column);
+        int type = world.type(row, column);
+        state.enteredType = type;
+        switch (world.types().action(type)) {
+            case EntityTypes.QUIET:
+                return EMPTY;
+            case EntityTypes.GAIN_CORE:
+                if (!world.claim(row, column)) {
+                    return taken(state);
+                }
+                state.cores++;
+                return CORE_GAINED;
+            case EntityTypes.BEAM:
+                long picked = world.pickFree(state.rand);
+                if (picked == Location.NONE) {
+                    return STRANDED;
+                }
+                state.position = picked;
+                return BEAMED;
+            case EntityTypes.WIN:
+                return WON;
+            case EntityTypes.LOSE:
+                return LOST;
+            case EntityTypes.FIGHT:
+                if (state.cores < 1) {
+                    return LOST_FIGHT;
+                }
+                if (!world.claim(row, column)) {
+                    return taken(state);
+                }
+                state.cores--;
+                return PHASER_FIGHT;
+            default:
+                return DESCRIBED;
+        }
+    }
+
+    /**
+     * Another player used up the location just as this one entered it, see World.claim, so it is
+     * entered as an empty location.
+     */
+    private static int taken(GameState state) {
+        state.entered = null;
+        state.enteredType = EntityTypes.EMPTY;
+        return EMPTY;
+    }
+
+    /**
+     * Checks the 4 direct neighbors of the player in a random order and returns the nearby text of
+     * the first one that has any.
+     *
+     * This draws the same random numbers as the original list based senseNearby (an index into the
+     * directions not yet checked, in the order up, down, left, right), so a seeded game plays out
+     * the same, but it keeps the unchecked directions in the nibbles of an int instead of a list,
+     * and checks them against the location's World.nearbyMask; only the neighbor whose text is
+     * returned is looked up.
+     *
+     * @param world The map.
+     * @param state The game.
+     * @return The nearby text, or null if no neighbor has any.
+     */
+    public static String sense(World world, GameState state) {
+        int mask = world.nearbyMask(state.row(), state.column());
+        int unchecked = (RIGHT << 12) | (LEFT << 8) | (DOWN << 4) | UP;
+        for (int remaining = 4; remaining > 0; remaining--) {
+            int index = state.rand.nextInt(remaining);
+            if (mask == 0) {
+                // nothing to find, but draw the numbers the list based version did
+                continue;
+            }
+            int shift = index * 4;
+            int direction = (unchecked >>> shift) & 0xF;
+            unchecked = (unchecked & ((1 << shift) - 1)) | ((unchecked >>> (shift + 4)) << shift);
+            if ((mask & (1 << direction)) == 0) {
+                continue;
+            }
+            return world.get(step(world, state.position, direction))[Config.NEARBY_TEXT];
+        }
+        return null;
+    }
+}
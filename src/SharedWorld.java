@@ -0,0 +1,221 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A map that many players play at once, where an energy core can be picked up and a Klingon
+ * defeated only once between all of them (see World.claim and Rules.enter).
+ *
+ * The locations that can be used up, those whose type's action is EntityTypes.GAIN_CORE or
+ * EntityTypes.FIGHT, are listed once when the world is made, sorted by packed location. Each has
+ * one int in an AtomicIntegerArray, AVAILABLE until a claim changes it to TAKEN with a
+ * compare-and-set, so of the players entering a location at once exactly one gets it. There is no
+ * lock: looking up a location reads the base map, which never changes, and for a location that
+ * can be used up also its int, so every player sees a location as empty from the moment it is
+ * taken.
+ *
+ * The base map isn't changed and must not be changed while the world is in use, and set isn't
+ * supported. A location that has been used up is empty, except to pickFree, which only picks
+ * locations that were empty to begin with.
+ */
+public class SharedWorld extends World {
+
+    /**
+     * The states of a location that can be used up.
+     */
+    public static final int AVAILABLE = 0;
+    public static final int TAKEN = 1;
+
+    private final World base;
+    // the locations that can be used up, sorted, and the state of each
+    private final long[] locations;
+    private final AtomicIntegerArray states;
+    private final LongAdder taken = new LongAdder();
+    private final LongAdder lost = new LongAdder();
+
+    /**
+     * @param base The map, which must be listable, see isListable.
+     * @throws IllegalArgumentException If the map can't be listed, such as a ChunkedWorld.
+     */
+    public SharedWorld(World base) {
+        this(base, claimable(base));
+    }
+
+    private SharedWorld(World base, long[] locations) {
+        super(base.rows(), base.columns(), base.types());
+        this.base = base;
+        this.locations = locations;
+        this.states = new AtomicIntegerArray(locations.length);
+    }
+
+    private static long[] claimable(World base) {
+        requireListable(base, "shared");
+        EntityTypes types = base.types();
+        long[][] found = { new long[16] };
+        int[] count = new int[1];
+        base.forEachPopulated((row, column, fields) -> {
+            int action = types.action(base.type(row, column));
+            if (action == EntityTypes.GAIN_CORE || action == EntityTypes.FIGHT) {
+                if (count[0] == found[0].length) {
+                    found[0] = Arrays.copyOf(found[0], count[0] * 2);
+                }
+                found[0][count[0]++] = Location.pack(row, column);
+            }
+        });
+        long[] locations = Arrays.copyOf(found[0], count[0]);
+        Arrays.sort(locations);
+        return locations;
+    }
+
+    /**
+     * @return A world on the same map with nothing used up, which shares this one's list of the
+     *         locations that can be.
+     */
+    public SharedWorld restart() {
+        return new SharedWorld(base, locations);
+    }
+
+    /**
+     * @return The map the players share.
+     */
+    public World base() {
+        return base;
+    }
+
+    /**
+     * @return The number of locations that can be used up.
+     */
+    public int claimable() {
+        return locations.length;
+    }
+
+    /**
+     * @param index From 0 to claimable() - 1.
+     * @return The location, packed by Location.pack, at that index among those that can be used
+     *         up, see index.
+     */
+    public long location(int index) {
+        return locations[index];
+    }
+
+    /**
+     * @return The number of locations used up so far.
+     */
+    public long taken() {
+        return taken.sum();
+    }
+
+    /**
+     * @return The number of claims that failed because another player used the location up
+     *         first.
+     */
+    public long lostClaims() {
+        return lost.sum();
+    }
+
+    /**
+     * @return The index of a location among those that can be used up, from 0 to claimable() - 1,
+     *         or -1 if it can't be used up.
+     */
+    public int index(int row, int column) {
+        int index = Arrays.binarySearch(locations, Location.pack(row, column));
+        return index < 0 ? -1 : index;
+    }
+
+    /**
+     * @return true if the location of a type that can be used up has been.
+     */
+    private boolean isTaken(int row, int column, int type) {
+        int action = types.action(type);
+        if (action != EntityTypes.GAIN_CORE && action != EntityTypes.FIGHT) {
+            return false;
+        }
+        int index = index(row, column);
+        return index >= 0 && states.get(index) == TAKEN;
+    }
+
+    @Override
+    public boolean claim(int row, int column) {
+        int index = index(row, column);
+        if (index < 0) {
+            return true;
+        }
+        if (states.compareAndSet(index, AVAILABLE, TAKEN)) {
+            taken.increment();
+            return true;
+        }
+        lost.increment();
+        return false;
+    }
+
+    @Override
+    public String[] get(int row, int column) {
+        String[] fields = base.get(row, column);
+        return fields != null && isTaken(row, column, base.type(row, column)) ? null : fields;
+    }
+
+    @Override
+    public int type(int row, int column) {
+        int type = base.type(row, column);
+        return isTaken(row, column, type) ? EntityTypes.EMPTY : type;
+    }
+
+    /**
+     * The base map's mask, less the neighbors that have been used up.
+     */
+    @Override
+    public int nearbyMask(int row, int column) {
+        int mask = base.nearbyMask(row, column);
+        if (mask == 0) {
+            return mask;
+        }
+        for (int direction = Rules.UP; direction <= Rules.RIGHT; direction++) {
+            if ((mask & (1 << direction)) != 0) {
+                long neighbor = Location.step(Location.pack(row, column), direction, rows,
+                        columns);
+                int neighborRow = Location.row(neighbor);
+                int neighborColumn = Location.column(neighbor);
+                if (isTaken(neighborRow, neighborColumn, base.type(neighborRow, neighborColumn))) {
+                    mask &= ~(1 << direction);
+                }
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * @throws UnsupportedOperationException Always, players only change a shared world by
+     *                                       claiming locations.
+     */
+    @Override
+    public void set(int row, int column, String[] fields) {
+        throw new UnsupportedOperationException("A shared world only changes by claims");
+    }
+
+    @Override
+    public long populated() {
+        return base.populated() - taken.sum();
+    }
+
+    @Override
+    public long pickFree(Random rand) {
+        return base.pickFree(rand);
+    }
+
+    @Override
+    public void forEachPopulated(LocationVisitor visitor) {
+        base.forEachPopulated((row, column, fields) -> {
+            if (!isTaken(row, column, base.type(row, column))) {
+                visitor.visit(row, column, fields);
+            }
+        });
+    }
+
+    @Override
+    public String[][][] toArray() {
+        String[][][] map = new String[rows][columns][];
+        forEachPopulated((row, column, fields) -> map[row][column] = fields);
+        return map;
+    }
+}
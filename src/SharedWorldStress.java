@@ -0,0 +1,210 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A contention test of SharedWorld: hundreds of players walk at random on one small map at once,
+ * all after the same few energy cores and Klingons, on pools of 1, 2, 4 and so on up to every
+ * core, and the moves per second of each pool are compared with one thread's.
+ *
+ * The players take turns of SLICE moves each, so that all of them are in the middle of their
+ * games together, and a player whose game ends starts again from the start. A map has only a few
+ * locations to claim, which the first slice would use up, so every slice starts on a world with
+ * nothing used up (see SharedWorld.restart) while the players keep their games, and the players
+ * race for the locations again wherever they are. Each player counts the energy cores they pick
+ * up and the Klingons they defeat by location. After each slice no location may have been
+ * claimed more than once, and the claims must add up to the locations the world has taken.
+ *
+ * Usage: java SharedWorldStress [-c configuration_filename] [-players n] [-moves n] [-rounds n]
+ * [-s seed]
+ */
+public class SharedWorldStress {
+
+    /**
+     * The moves a player makes before letting the others move.
+     */
+    public static final int SLICE = 64;
+
+    /**
+     * One player, who keeps their game between slices.
+     */
+    private static class Player implements Callable<Void> {
+        final SharedWorld[] world;
+        // the times each location of the world was claimed in this slice, by every player
+        final AtomicIntegerArray[] claims;
+        final int[] start;
+        final GameState state;
+        long moves;
+
+        Player(SharedWorld[] world, AtomicIntegerArray[] claims, int[] start, long seed) {
+            this.world = world;
+            this.claims = claims;
+            this.start = start;
+            this.state = new GameState(start[Config.ROW], start[Config.COLUMN],
+                    new GameRandom(seed));
+        }
+
+        /**
+         * Starts a new game at the start.
+         */
+        void restart() {
+            state.reset(start[Config.ROW], start[Config.COLUMN], state.rand.nextLong());
+            count(Rules.enter(world[0], state));
+        }
+
+        private void count(int outcome) {
+            if (outcome == Rules.CORE_GAINED || outcome == Rules.PHASER_FIGHT) {
+                claims[0].incrementAndGet(world[0].index(state.row(), state.column()));
+            } else if (Rules.isFinished(outcome)) {
+                restart();
+            }
+        }
+
+        @Override
+        public Void call() {
+            for (int i = 0; i < SLICE; i++) {
+                count(Rules.move(world[0], state, state.rand.nextInt(4)));
+            }
+            moves += SLICE;
+            return null;
+        }
+    }
+
+    /**
+     * Plays the rounds on a pool of threads, a round being as many slices as make up the moves.
+     *
+     * @return The moves per second, or -1 if a location was used up more than once.
+     */
+    private static double run(SharedWorld map, int[] start, int threads, int players, int moves,
+            int rounds, long seed) throws InterruptedException, ExecutionException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            SharedWorld[] world = { map.restart() };
+            AtomicIntegerArray[] claims = { new AtomicIntegerArray(map.claimable()) };
+            List<Player> tasks = new ArrayList<>();
+            for (int p = 0; p < players; p++) {
+                tasks.add(new Player(world, claims, start, seed + p));
+            }
+            long taken = 0;
+            long lost = 0;
+            long begin = System.nanoTime();
+            for (int round = 0; round < rounds; round++) {
+                for (Player player : tasks) {
+                    player.restart();
+                }
+                for (int slice = 0; slice < moves; slice += SLICE) {
+                    for (Future<Void> done : pool.invokeAll(tasks)) {
+                        done.get();
+                    }
+                    long used = 0;
+                    for (int index = 0; index < claims[0].length(); index++) {
+                        int times = claims[0].get(index);
+                        if (times > 1) {
+                            long location = map.location(index);
+                            System.out.printf("Error, round %d: %d,%d was used up %d times\n",
+                                    round, Location.row(location), Location.column(location),
+                                    times);
+                            return -1;
+                        }
+                        used += times;
+                    }
+                    if (used != world[0].taken()) {
+                        System.out.printf("Error, round %d used %d locations, the world took "
+                                + "%d\n", round, used, world[0].taken());
+                        return -1;
+                    }
+                    taken += world[0].taken();
+                    lost += world[0].lostClaims();
+                    world[0] = map.restart();
+                    claims[0] = new AtomicIntegerArray(map.claimable());
+                }
+            }
+            long elapsed = System.nanoTime() - begin;
+            long total = 0;
+            for (Player player : tasks) {
+                total += player.moves;
+            }
+            System.out.printf("Threads %d: %d moves in %d ms, %.2f million per second, "
+                    + "%d locations taken, %d claims lost\n", threads, total, elapsed / 1000000,
+                    total * 1e3 / elapsed, taken, lost);
+            return total * 1e9 / elapsed;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Runs the test on pools of increasing size and prints how the moves per second scale.
+     *
+     * @param args See the class comment.
+     */
+    public static void main(String[] args) throws InterruptedException, ExecutionException {
+        String configurationFile = "src/StarTrek.advcfg";
+        int players = 200;
+        int moves = 1024;
+        int rounds = 20;
+        long seed = 0;
+        for (int i = 0; i < args.length; ++i) {
+            if (args[i].equalsIgnoreCase("-c")) {
+                configurationFile = args[++i];
+            } else if (args[i].equalsIgnoreCase("-players")) {
+                players = Integer.parseInt(args[++i]);
+            } else if (args[i].equalsIgnoreCase("-moves")) {
+                moves = Integer.parseInt(args[++i]);
+            } else if (args[i].equalsIgnoreCase("-rounds")) {
+                rounds = Integer.parseInt(args[++i]);
+            } else if (args[i].equalsIgnoreCase("-s")) {
+                seed = Long.parseLong(args[++i]);
+            }
+        }
+
+        int[] start = new int[] { 0, 0 };
+        SharedWorld world;
+        try {
+            World map = MappedConfigLoader.load(configurationFile, start);
+            if (map == null) {
+                return;
+            }
+            world = new SharedWorld(map);
+        } catch (IOException e) {
+            System.out.println("Error, unable to load file: " + configurationFile);
+            return;
+        } catch (IllegalArgumentException e) {
+            // such as a reference to an undeclared template or an unknown type
+            System.out.println("Error, bad map in file: " + configurationFile + ": "
+                    + e.getMessage());
+            return;
+        }
+        System.out.printf("%d players, %d moves each per round, %d rounds, %d locations to "
+                + "claim\n", players, moves, rounds, world.claimable());
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        // a first run to warm up
+        if (run(world, start, cores, players, moves, Math.max(1, rounds / 4), seed) < 0) {
+            return;
+        }
+        List<Integer> pools = new ArrayList<>();
+        for (int threads = 1; threads < cores; threads *= 2) {
+            pools.add(threads);
+        }
+        pools.add(cores);
+        double single = 0;
+        for (int threads : pools) {
+            double rate = run(world, start, threads, players, moves, rounds, seed);
+            if (rate < 0) {
+                return;
+            }
+            if (threads == 1) {
+                single = rate;
+            } else {
+                System.out.printf("Speedup on %d threads: %.2f\n", threads, rate / single);
+            }
+        }
+    }
+}
@@ -0,0 +1,353 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+/**
+ * Plays many games without any console output or sound, spread over all cores with a fork-join
+ * pool, and reports aggregate statistics. It is intended for tuning how hard a map is by brute
+ * force.
+ *
+ * Game i is played with a Random seeded with seed + i, so a run is reproducible. Every game
+ * starts by entering the starting location, like the console game, and then asks its MovePolicy
+ * for a command each turn until the game is won or lost or maxTurns commands have been played.
+ * All games share the loaded World, which they only read, and each worker thread reuses one
+ * GameState for all of its games.
+ *
+ * Usage: java Simulator [-c configuration_filename] [-n games] [-s seed] [-t max_turns]
+ * [-p random|script:commands] [-threads n]
+ */
+public class Simulator {
+
+    /**
+     * Chooses the player's command each turn.
+     */
+    public interface MovePolicy {
+        /**
+         * Called before each game.
+         */
+        default void reset() {
+        }
+
+        /**
+         * @param world The map.
+         * @param state The game.
+         * @return Rules.UP, DOWN, LEFT, RIGHT or SENSE.
+         */
+        int next(World world, GameState state);
+    }
+
+    /**
+     * Moves in a uniformly random direction each turn, using the game's random number generator.
+     */
+    public static class RandomWalk implements MovePolicy {
+        @Override
+        public int next(World world, GameState state) {
+            return state.rand.nextInt(4);
+        }
+    }
+
+    /**
+     * Plays a fixed list of commands (such as "wwdn"), starting over when it runs out. Characters
+     * that aren't commands are skipped.
+     */
+    public static class Scripted implements MovePolicy {
+        private final int[] commands;
+        private int next;
+
+        public Scripted(String script) {
+            int[] parsed = new int[script.length()];
+            int count = 0;
+            for (int i = 0; i < script.length(); i++) {
+                int command = Rules.command(script.substring(i, i + 1).toLowerCase());
+                if (command >= 0) {
+                    parsed[count++] = command;
+                }
+            }
+            if (count == 0) {
+                throw new IllegalArgumentException("No commands in script: " + script);
+            }
+            commands = Arrays.copyOf(parsed, count);
+        }
+
+        @Override
+        public void reset() {
+            next = 0;
+        }
+
+        @Override
+        public int next(World world, GameState state) {
+            int command = commands[next];
+            next = (next + 1) % commands.length;
+            return command;
+        }
+    }
+
+    /**
+     * The statistics of a set of games. Statistics of separate sets are combined with add.
+     */
+    public static class Stats {
+        long games;
+        long won;
+        long lost;
+        long lostFights;
+        long unfinished;
+        long turns;
+        int minTurns = Integer.MAX_VALUE;
+        int maxTurns;
+        long coresCollected;
+        long phaserFights;
+        long beams;
+        // finished games by the number of turns they took, the last bucket is maxTurns and more
+        final long[] turnCounts;
+
+        Stats(int maxTurns) {
+            turnCounts = new long[maxTurns + 1];
+        }
+
+        void add(Stats other) {
+            games += other.games;
+            won += other.won;
+            lost += other.lost;
+            lostFights += other.lostFights;
+            unfinished += other.unfinished;
+            turns += other.turns;
+            minTurns = Math.min(minTurns, other.minTurns);
+            maxTurns = Math.max(maxTurns, other.maxTurns);
+            coresCollected += other.coresCollected;
+            phaserFights += other.phaserFights;
+            beams += other.beams;
+            for (int i = 0; i < turnCounts.length; i++) {
+                turnCounts[i] += other.turnCounts[i];
+            }
+        }
+
+        /**
+         * @param fraction A fraction between 0 and 1.
+         * @return The number of turns within which that fraction of the finished games finished.
+         */
+        int turnsPercentile(double fraction) {
+            long finished = games - unfinished;
+            long target = (long) Math.ceil(finished * fraction);
+            long seen = 0;
+            for (int i = 0; i < turnCounts.length; i++) {
+                seen += turnCounts[i];
+                if (seen >= target && seen > 0) {
+                    return i;
+                }
+            }
+            return turnCounts.length - 1;
+        }
+    }
+
+    /**
+     * Plays one game.
+     *
+     * @param world    The map.
+     * @param state    The game, already reset to its start.
+     * @param policy   Chooses the commands, already reset.
+     * @param maxTurns The most commands to play.
+     * @param stats    Updated with the game's results.
+     */
+    public static void play(World world, GameState state, MovePolicy policy, int maxTurns,
+            Stats stats) {
+        int outcome = Rules.enter(world, state);
+        count(outcome, stats);
+        while (!Rules.isFinished(outcome) && state.turns < maxTurns) {
+            int command = policy.next(world, state);
+            if (command == Rules.SENSE) {
+                // sensing takes a turn too, so a script of only senses still ends
+                Rules.sense(world, state);
+                state.turns++;
+                continue;
+            }
+            outcome = Rules.move(world, state, command);
+            count(outcome, stats);
+        }
+
+        stats.games++;
+        stats.turns += state.turns;
+        stats.minTurns = Math.min(stats.minTurns, state.turns);
+        stats.maxTurns = Math.max(stats.maxTurns, state.turns);
+        switch (outcome) {
+            case Rules.WON:
+                stats.won++;
+                break;
+            case Rules.LOST:
+                stats.lost++;
+                break;
+            case Rules.LOST_FIGHT:
+                stats.lostFights++;
+                break;
+            default:
+                stats.unfinished++;
+                return;
+        }
+        stats.turnCounts[Math.min(state.turns, stats.turnCounts.length - 1)]++;
+    }
+
+    private static void count(int outcome, Stats stats) {
+        if (outcome == Rules.CORE_GAINED) {
+            stats.coresCollected++;
+        } else if (outcome == Rules.PHASER_FIGHT) {
+            stats.phaserFights++;
+        } else if (outcome == Rules.BEAMED) {
+            stats.beams++;
+        }
+    }
+
+    /**
+     * Plays a range of games, splitting the range in half until it is small enough to play on one
+     * thread.
+     */
+    @SuppressWarnings("serial") // never serialized, only run on the pool
+    private static class Games extends RecursiveTask<Stats> {
+        private static final int SEQUENTIAL_GAMES = 2048;
+
+        final World world;
+        final int[] start;
+        final Supplier<MovePolicy> policies;
+        final long seed;
+        final int maxTurns;
+        final long from;
+        final long to;
+
+        Games(World world, int[] start, Supplier<MovePolicy> policies, long seed, int maxTurns,
+                long from, long to) {
+            this.world = world;
+            this.start = start;
+            this.policies = policies;
+            this.seed = seed;
+            this.maxTurns = maxTurns;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Stats compute() {
+            if (to - from <= SEQUENTIAL_GAMES) {
+                Stats stats = new Stats(maxTurns);
+                GameState state = new GameState(start[Config.ROW], start[Config.COLUMN],
+                        new GameRandom());
+                MovePolicy policy = policies.get();
+                for (long game = from; game < to; game++) {
+                    state.reset(start[Config.ROW], start[Config.COLUMN], seed + game);
+                    policy.reset();
+                    play(world, state, policy, maxTurns, stats);
+                }
+                return stats;
+            }
+            long middle = from + (to - from) / 2;
+            Games left = new Games(world, start, policies, seed, maxTurns, from, middle);
+            left.fork();
+            Stats stats = new Games(world, start, policies, seed, maxTurns, middle, to).compute();
+            stats.add(left.join());
+            return stats;
+        }
+    }
+
+    /**
+     * Plays games seed, seed + 1, ... seed + games - 1 in parallel.
+     *
+     * @param pool     The pool to play the games on.
+     * @param world    The map.
+     * @param start    The starting location.
+     * @param policies Creates a policy for each worker.
+     * @param games    The number of games.
+     * @param seed     The seed of the first game.
+     * @param maxTurns The most commands to play in a game.
+     * @return The statistics of all of the games.
+     */
+    public static Stats simulate(ForkJoinPool pool, World world, int[] start,
+            Supplier<MovePolicy> policies, long games, long seed, int maxTurns) {
+        return pool.invoke(new Games(world, start, policies, seed, maxTurns, 0, games));
+    }
+
+    /**
+     * Runs a simulation from the command line and prints its statistics.
+     *
+     * @param args See the class comment.
+     */
+    public static void main(String[] args) {
+        String configurationFile = "src/StarTrek.advcfg";
+        long games = 1000000;
+        long seed = 0;
+        int maxTurns = 1000;
+        String policy = "random";
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < args.length; ++i) {
+            if (args[i].equalsIgnoreCase("-c")) {
+                configurationFile = args[++i];
+            } else if (args[i].equalsIgnoreCase("-n")) {
+                games = Long.parseLong(args[++i]);
+            } else if (args[i].equalsIgnoreCase("-s")) {
+                seed = Long.parseLong(args[++i]);
+            } else if (args[i].equalsIgnoreCase("-t")) {
+                maxTurns = Integer.parseInt(args[++i]);
+            } else if (args[i].equalsIgnoreCase("-p")) {
+                policy = args[++i];
+            } else if (args[i].equalsIgnoreCase("-threads")) {
+                threads = Integer.parseInt(args[++i]);
+            }
+        }
+
+        Supplier<MovePolicy> policies;
+        if (policy.equalsIgnoreCase("random")) {
+            policies = RandomWalk::new;
+        } else if (policy.toLowerCase().startsWith("script:")) {
+            String script = policy.substring("script:".length());
+            policies = () -> new Scripted(script);
+        } else {
+            System.out.println("Error, unknown policy: " + policy);
+            return;
+        }
+
+        int[] start = new int[] { 0, 0 };
+        World world;
+        try {
+            world = MappedConfigLoader.load(configurationFile, start);
+            if (world == null) {
+                return;
+            }
+        } catch (IOException e) {
+            System.out.println("Error, unable to load file: " + configurationFile);
+            return;
+        } catch (IllegalArgumentException e) {
+            // such as a reference to an undeclared template or an unknown type
+            System.out.println("Error, bad map in file: " + configurationFile + ": "
+                    + e.getMessage());
+            return;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long begin = System.nanoTime();
+        Stats stats = simulate(pool, world, start, policies, games, seed, maxTurns);
+        long elapsed = System.nanoTime() - begin;
+        pool.shutdown();
+
+        System.out.printf("Games: %d (%s policy, seeds %d-%d, at most %d turns, %d threads)\n",
+                stats.games, policy, seed, seed + games - 1, maxTurns, threads);
+        System.out.printf("Won: %d (%.2f%%)\n", stats.won, percent(stats.won, stats.games));
+        System.out.printf("Lost (Khan): %d (%.2f%%)\n", stats.lost,
+                percent(stats.lost, stats.games));
+        System.out.printf("Lost fights (Klingons): %d (%.2f%%)\n", stats.lostFights,
+                percent(stats.lostFights, stats.games));
+        System.out.printf("Unfinished after %d turns: %d (%.2f%%)\n", maxTurns, stats.unfinished,
+                percent(stats.unfinished, stats.games));
+        System.out.printf("Turns: mean %.1f, min %d, max %d, finished games median %d, 90%% %d, "
+                + "99%% %d\n", (double) stats.turns / Math.max(1, stats.games), stats.minTurns,
+                stats.maxTurns, stats.turnsPercentile(0.5), stats.turnsPercentile(0.9),
+                stats.turnsPercentile(0.99));
+        System.out.printf("Energy cores collected: %d (%.2f per game), phaser fights: %d, "
+                + "beams: %d\n", stats.coresCollected,
+                (double) stats.coresCollected / Math.max(1, stats.games), stats.phaserFights,
+                stats.beams);
+        System.out.printf("Elapsed: %d ms (%.0f games per minute)\n", elapsed / 1000000,
+                stats.games * 60e9 / elapsed);
+    }
+
+    private static double percent(long count, long total) {
+        return total == 0 ? 0 : 100.0 * count / total;
+    }
+}
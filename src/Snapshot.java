@@ -0,0 +1,172 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * A saved point in a game: the player's location, energy cores and turns, the state of its
+ * GameRandom, and the locations its OverlayWorld changed from the base map. Taking or restoring a
+ * snapshot costs the number of changed locations, not the area of the map, so they are cheap
+ * enough for checkpoints, undo, and forking many what-if branches from one position: restore one
+ * snapshot into as many GameStates and forks of the world as needed.
+ *
+ * A snapshot is immutable, and toBytes gives it a compact binary form: the magic number and
+ * version, position, cores, turns and random state, then the changed locations, each its packed
+ * location and the number of its fields/attributes (-1 for an emptied location) followed by the
+ * fields in modified UTF-8.
+ */
+public final class Snapshot {
+
+    public static final int MAGIC = 0x41445653; // "ADVS"
+    public static final int VERSION = 1;
+
+    private final long position;
+    private final int cores;
+    private final int turns;
+    private final long randomState;
+    // the changed locations, packed, and their fields/attributes
+    private final long[] locations;
+    private final String[][] cells;
+
+    private Snapshot(long position, int cores, int turns, long randomState, long[] locations,
+            String[][] cells) {
+        this.position = position;
+        this.cores = cores;
+        this.turns = turns;
+        this.randomState = randomState;
+        this.locations = locations;
+        this.cells = cells;
+    }
+
+    /**
+     * Saves the current point of a game.
+     *
+     * @param state The game, whose random number generator must be a GameRandom.
+     * @param world The map the game is played on.
+     * @return The snapshot.
+     * @throws IllegalArgumentException If the game's random number generator isn't a GameRandom,
+     *                                  whose state can't be saved.
+     */
+    public static Snapshot take(GameState state, OverlayWorld world) {
+        if (!(state.rand instanceof GameRandom)) {
+            throw new IllegalArgumentException("Only games with a GameRandom can be saved");
+        }
+        int count = world.changeCount();
+        long[] locations = new long[count];
+        String[][] cells = new String[count][];
+        int[] next = { 0 };
+        world.forEachChange((row, column, fields) -> {
+            locations[next[0]] = Location.pack(row, column);
+            cells[next[0]++] = fields;
+        });
+        return new Snapshot(state.position, state.cores, state.turns,
+                ((GameRandom) state.rand).state(), locations, cells);
+    }
+
+    /**
+     * Puts a game back to this point. The last location entered and sensed are forgotten, as
+     * they are when a game is reset.
+     *
+     * @param state The game, whose random number generator must be a GameRandom.
+     * @param world An overlay of the same base map as the one saved, its changes are replaced.
+     * @throws IllegalArgumentException If the game's random number generator isn't a GameRandom.
+     */
+    public void restore(GameState state, OverlayWorld world) {
+        if (!(state.rand instanceof GameRandom)) {
+            throw new IllegalArgumentException("Only games with a GameRandom can be restored");
+        }
+        state.position = position;
+        state.cores = cores;
+        state.turns = turns;
+        state.entered = null;
+        state.enteredType = EntityTypes.EMPTY;
+        state.nearby = null;
+        ((GameRandom) state.rand).setState(randomState);
+        world.clearChanges();
+        for (int i = 0; i < locations.length; i++) {
+            world.set(Location.row(locations[i]), Location.column(locations[i]), cells[i]);
+        }
+    }
+
+    /**
+     * @return The number of changed locations saved.
+     */
+    public int changeCount() {
+        return locations.length;
+    }
+
+    /**
+     * @return The snapshot in its binary form, see the class comment.
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + locations.length * 64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(position);
+            out.writeInt(cores);
+            out.writeInt(turns);
+            out.writeLong(randomState);
+            out.writeInt(locations.length);
+            for (int i = 0; i < locations.length; i++) {
+                out.writeLong(locations[i]);
+                String[] fields = cells[i];
+                out.writeInt(fields == null ? -1 : fields.length);
+                if (fields != null) {
+                    for (String field : fields) {
+                        out.writeUTF(field);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // a ByteArrayOutputStream doesn't throw
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads a snapshot from its binary form.
+     *
+     * @param bytes The bytes from toBytes.
+     * @return The snapshot.
+     * @throws IOException If the bytes aren't a snapshot of this version, or are cut short.
+     */
+    public static Snapshot fromBytes(byte[] bytes) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a snapshot");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Snapshot is version " + version + ", expected " + VERSION);
+            }
+            long position = in.readLong();
+            int cores = in.readInt();
+            int turns = in.readInt();
+            long randomState = in.readLong();
+            int count = in.readInt();
+            if (count < 0 || count > bytes.length / 12) {
+                throw new IOException("Snapshot has a bad number of changes: " + count);
+            }
+            long[] locations = new long[count];
+            String[][] cells = new String[count][];
+            for (int i = 0; i < count; i++) {
+                locations[i] = in.readLong();
+                int length = in.readInt();
+                if (length >= 0) {
+                    if (length > bytes.length) {
+                        throw new IOException("Snapshot has a bad number of fields: " + length);
+                    }
+                    cells[i] = new String[length];
+                    for (int f = 0; f < length; f++) {
+                        cells[i][f] = in.readUTF();
+                    }
+                }
+            }
+            return new Snapshot(position, cores, turns, randomState, locations, cells);
+        }
+    }
+}
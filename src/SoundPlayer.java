@@ -0,0 +1,64 @@
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Plays the sounds of a Game, listening to its events: the intro when it starts, the sound of the
+ * type of each location entered (see EntityTypes), and the alert and phaser of a phaser fight.
+ * When the game ends it waits for the sound of the final location to finish, so that it isn't cut
+ * off when the program exits.
+ *
+ * Sounds go through Adventure.playSound, so -mute silences them. The fight and the ending have
+ * a high priority, so they are heard however many other sounds are playing, and the intro a low
+ * one.
+ */
+public class SoundPlayer implements Game.Listener {
+
+    private final EntityTypes types;
+    // the sound of the location that ended the game
+    private CompletableFuture<Void> ending;
+
+    /**
+     * @param types The rule table of the map, which gives each type's sound.
+     */
+    public SoundPlayer(EntityTypes types) {
+        this.types = types;
+    }
+
+    @Override
+    public void event(int event, GameState state) {
+        long time = Metrics.start();
+        String typeSound = types.sound(state.enteredType);
+        switch (event) {
+            case Game.STARTED:
+                Adventure.playSound(Config.SOUND_INTRO, AudioMixer.LOW);
+                break;
+            case Rules.CORE_GAINED:
+            case Rules.BEAMED:
+            case Rules.STRANDED:
+            case Rules.DESCRIBED:
+                if (typeSound != null) {
+                    Adventure.playSound(typeSound);
+                }
+                break;
+            case Rules.WON:
+            case Rules.LOST:
+            case Rules.LOST_FIGHT:
+                if (typeSound != null) {
+                    ending = Adventure.playSound(typeSound, AudioMixer.HIGH);
+                }
+                break;
+            case Rules.PHASER_FIGHT:
+                Adventure.playSound(Config.SOUND_ALERT, AudioMixer.HIGH);
+                Adventure.playSound(Config.SOUND_PHASER, AudioMixer.HIGH);
+                break;
+            case Game.ENDED:
+                if (ending != null) {
+                    Adventure.awaitSound(ending);
+                    ending = null;
+                }
+                return;
+            default:
+                return;
+        }
+        Metrics.lap(Metrics.AUDIO, time);
+    }
+}
@@ -0,0 +1,109 @@
+import java.util.Random;
+
+/**
+ * A World that only stores its populated locations, in a LongObjectMap keyed by the row and
+ * column packed into a long. Memory grows with the number of populated locations, not with the
+ * area of the map, so maps of 100k x 100k locations and beyond can be loaded.
+ *
+ * Empty locations are picked by sampling random locations until an empty one is found. Sparse
+ * worlds are at most half populated (see World.prefersDense), so this takes fewer than two tries
+ * on average.
+ */
+public class SparseWorld extends World {
+
+    private final LongObjectMap<Cell> cells;
+
+    /**
+     * A populated location: its fields/attributes and their type.
+     */
+    private static final class Cell {
+        final String[] fields;
+        final int type;
+
+        Cell(String[] fields, int type) {
+            this.fields = fields;
+            this.type = type;
+        }
+    }
+
+    /**
+     * Creates an empty map with the built in entity rules.
+     *
+     * @param rows     The number of rows in the map.
+     * @param columns  The number of columns in the map.
+     * @param expected The expected number of populated locations.
+     */
+    public SparseWorld(int rows, int columns, int expected) {
+        this(rows, columns, expected, new EntityTypes());
+    }
+
+    /**
+     * Creates an empty map.
+     *
+     * @param rows     The number of rows in the map.
+     * @param columns  The number of columns in the map.
+     * @param expected The expected number of populated locations.
+     * @param types    The rule table to resolve the types of the locations with.
+     */
+    public SparseWorld(int rows, int columns, int expected, EntityTypes types) {
+        super(rows, columns, types);
+        this.cells = new LongObjectMap<>(expected);
+    }
+
+    /**
+     * Packs a row and column into a single long key, row in the high half, see Location.pack.
+     */
+    static long key(int row, int column) {
+        return Location.pack(row, column);
+    }
+
+    @Override
+    public String[] get(int row, int column) {
+        Cell cell = cells.get(key(row, column));
+        return cell == null ? null : cell.fields;
+    }
+
+    @Override
+    public int type(int row, int column) {
+        Cell cell = cells.get(key(row, column));
+        return cell == null ? EntityTypes.EMPTY : cell.type;
+    }
+
+    @Override
+    public void set(int row, int column, String[] fields) {
+        checkBounds(row, column);
+        Cell cell = fields == null ? null : new Cell(fields, types.resolve(fields));
+        cells.put(key(row, column), cell);
+    }
+
+    @Override
+    public long populated() {
+        return cells.size();
+    }
+
+    @Override
+    public long pickFree(Random rand) {
+        if (cells.size() >= (long) rows * columns) {
+            return Location.NONE;
+        }
+        int row;
+        int column;
+        do {
+            row = rand.nextInt(rows);
+            column = rand.nextInt(columns);
+        } while (cells.get(key(row, column)) != null);
+        return key(row, column);
+    }
+
+    @Override
+    public void forEachPopulated(LocationVisitor visitor) {
+        cells.forEach((key, cell) -> visitor.visit((int) (key >>> 32), (int) key, cell.fields));
+    }
+
+    @Override
+    public String[][][] toArray() {
+        String[][][] map = new String[rows][columns][];
+        cells.forEach((key, cell) -> map[(int) (key >>> 32)][(int) key] = cell.fields);
+        return map;
+    }
+}
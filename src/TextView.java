@@ -0,0 +1,66 @@
+import java.io.PrintStream;
+
+/**
+ * Shows a Game as the text the console game prints, listening to its events. The text is built up
+ * in a StringBuilder; if there is a console it is printed after each event, otherwise it is left
+ * for the owner to send or write in batches and clear, as GameServer and Replay do.
+ *
+ * The prompt and the goodbye aren't events, the front end prints them.
+ */
+public class TextView implements Game.Listener {
+
+    private final PrintStream console;
+    private final StringBuilder text = new StringBuilder(256);
+    private final String newline = System.lineSeparator();
+
+    /**
+     * @param console Where each event's text is printed, or null to only build up the text.
+     */
+    public TextView(PrintStream console) {
+        this.console = console;
+    }
+
+    /**
+     * @return The text not yet printed, the caller may clear it.
+     */
+    public StringBuilder text() {
+        return text;
+    }
+
+    @Override
+    public void event(int event, GameState state) {
+        switch (event) {
+            case Game.STARTED:
+                text.append(Adventure.WELCOME).append(newline);
+                text.append("Controls: ").append(Adventure.CONTROLS).append(newline);
+                break;
+            case Game.SENSED:
+                text.append(state.nearby != null ? state.nearby : Config.NEARBY_NULL)
+                        .append(newline);
+                break;
+            case Game.SHOWED_CORES:
+                text.append("Energy cores: ").append(state.cores).append(newline);
+                break;
+            case Game.UNKNOWN_COMMAND:
+                text.append(Adventure.CONTROLS).append(newline);
+                break;
+            case Game.RELOADED:
+                text.append(Config.MAP_RELOADED).append(newline);
+                break;
+            case Game.MOVED:
+            case Game.AMBUSHED:
+            case Game.ENDED:
+                return;
+            default:
+                // the outcome of entering a location
+                Adventure.describe(event, state.entered, text);
+                break;
+        }
+        if (console != null) {
+            long time = Metrics.start();
+            console.print(text);
+            text.setLength(0);
+            Metrics.lap(Metrics.OUTPUT, time);
+        }
+    }
+}
@@ -0,0 +1,272 @@
+import java.util.Random;
+
+/**
+ * The locations of a map and their fields/attributes, indexed by row and column. The map wraps at
+ * its edges and is rectangular.
+ *
+ * There are two kinds of storage. A DenseWorld is the original String[][][] array and is used for
+ * small maps and maps where a large share of the locations are populated. A SparseWorld only
+ * stores the populated locations, keyed by packed row and column, so a huge map with few
+ * populated locations costs memory in proportion to what is in it rather than its area. An
+ * ArrayWorld stores nothing, it is a view of a String[][][] map for Adventure's array based
+ * methods.
+ *
+ * Each location also has a type, resolved from its fields/attributes with the world's
+ * EntityTypes when the location is set, so the rules look up what a location does by index
+ * rather than by comparing its strings. A type is only kept by a world whose storage can't be
+ * changed except through set; an ArrayWorld, whose array anyone may write into, resolves the type
+ * on every look-up instead, so a type never outlives the fields/attributes it came from.
+ */
+public abstract class World {
+
+    /**
+     * Maps with at most this many locations are always stored densely, they are cheap regardless
+     * of how many locations are populated.
+     */
+    public static final long SMALL_MAP_LOCATIONS = 1 << 16;
+
+    protected final int rows;
+    protected final int columns;
+    protected final EntityTypes types;
+
+    protected World(int rows, int columns, EntityTypes types) {
+        this.rows = rows;
+        this.columns = columns;
+        this.types = types;
+    }
+
+    /**
+     * @return The number of rows in the map.
+     */
+    public int rows() {
+        return rows;
+    }
+
+    /**
+     * @return The number of columns in the map.
+     */
+    public int columns() {
+        return columns;
+    }
+
+    /**
+     * @return The rule table the types of the locations index.
+     */
+    public EntityTypes types() {
+        return types;
+    }
+
+    /**
+     * @param row    The row of the location.
+     * @param column The column of the location.
+     * @return The fields/attributes at the location, or null if the location is empty.
+     */
+    public abstract String[] get(int row, int column);
+
+    /**
+     * @param location The location, packed by Location.pack.
+     * @return The fields/attributes at the location, or null if the location is empty.
+     */
+    public String[] get(long location) {
+        return get(Location.row(location), Location.column(location));
+    }
+
+    /**
+     * @param row    The row of the location.
+     * @param column The column of the location.
+     * @return The type of the location in types(), EntityTypes.EMPTY if the location is empty.
+     */
+    public abstract int type(int row, int column);
+
+    /**
+     * Returns which of the 4 direct neighbors of a location, wrapping at the edges of the map,
+     * have nearby text to sense. Bit Rules.UP is set if the location above has, and so on for
+     * Rules.DOWN, Rules.LEFT and Rules.RIGHT.
+     *
+     * This looks at the neighbors each call; a DenseWorld keeps the masks of all of its locations,
+     * which only set changes.
+     *
+     * @param row    The row of the location.
+     * @param column The column of the location.
+     * @return The mask of neighbors with nearby text.
+     */
+    public int nearbyMask(int row, int column) {
+        int up = row == 0 ? rows - 1 : row - 1;
+        int down = row == rows - 1 ? 0 : row + 1;
+        int left = column == 0 ? columns - 1 : column - 1;
+        int right = column == columns - 1 ? 0 : column + 1;
+        return (hasNearbyText(get(up, column)) ? 1 << Rules.UP : 0)
+                | (hasNearbyText(get(down, column)) ? 1 << Rules.DOWN : 0)
+                | (hasNearbyText(get(row, left)) ? 1 << Rules.LEFT : 0)
+                | (hasNearbyText(get(row, right)) ? 1 << Rules.RIGHT : 0);
+    }
+
+    /**
+     * @param fields The fields/attributes of a location, or null.
+     * @return true if the location has nearby text that isn't blank.
+     */
+    protected static boolean hasNearbyText(String[] fields) {
+        return fields != null && fields.length > Config.NEARBY_TEXT
+                && !fields[Config.NEARBY_TEXT].isBlank();
+    }
+
+    /**
+     * Changes the fields/attributes at a location, and its type.
+     *
+     * @param row    The row of the location.
+     * @param column The column of the location.
+     * @param fields The new fields/attributes, or null to make the location empty.
+     */
+    public abstract void set(int row, int column, String[] fields);
+
+    /**
+     * Uses up what is at a location for the player entering it, such as an energy core picked up
+     * or a Klingon defeated, so that no other player can. A SharedWorld uses things up for all its
+     * players and an OverlayWorld made to use them up empties them in its overlay; in any other
+     * world a location stays as it is and every claim succeeds.
+     *
+     * @param row    The row of the location.
+     * @param column The column of the location.
+     * @return true if the caller may use the location, false if another player used it up first.
+     */
+    public boolean claim(int row, int column) {
+        return true;
+    }
+
+    /**
+     * @return The number of locations that have fields/attributes.
+     */
+    public abstract long populated();
+
+    /**
+     * Randomly picks a location with null fields/attributes and changes the row and column of the
+     * location parameter to be that location.
+     *
+     * @param rand     A random number generator.
+     * @param location Changed to be the coordinates of the picked location.
+     * @return true if a location was picked, false if there are no empty locations.
+     */
+    public boolean pickFree(Random rand, int[] location) {
+        long picked = pickFree(rand);
+        if (picked == Location.NONE) {
+            return false;
+        }
+        Location.unpack(picked, location);
+        return true;
+    }
+
+    /**
+     * Randomly picks a location with null fields/attributes.
+     *
+     * @param rand A random number generator.
+     * @return The picked location packed by Location.pack, or Location.NONE if there are no empty
+     *         locations.
+     */
+    public abstract long pickFree(Random rand);
+
+    /**
+     * @return true if forEachPopulated and toArray can list the map, false for a map too large
+     *         to list, such as a ChunkedWorld.
+     */
+    public boolean isListable() {
+        return true;
+    }
+
+    /**
+     * Checks that a map can be listed, for the code that needs every location of it.
+     *
+     * @param world The map.
+     * @param use   What the map can't be used for if it can't be listed, such as "analyzed".
+     * @throws IllegalArgumentException If the map can't be listed, see isListable.
+     */
+    public static void requireListable(World world, String use) {
+        if (!world.isListable()) {
+            throw new IllegalArgumentException("A map that can't be listed, such as an infinite "
+                    + "map, can't be " + use);
+        }
+    }
+
+    /**
+     * Calls the visitor with each location that has fields/attributes. A dense world visits them
+     * in row-major order, a sparse world in no particular order.
+     *
+     * @param visitor Called with the row, column and fields/attributes of each location.
+     */
+    public abstract void forEachPopulated(LocationVisitor visitor);
+
+    /**
+     * @return The map as a String[][][], indexes are row, column, fields/attributes. It is
+     *         allocated, except by an ArrayWorld, whose map it is.
+     */
+    public abstract String[][][] toArray();
+
+    /**
+     * Decides whether a map should be stored densely. Small maps are always dense, otherwise a map
+     * is dense when at least half of its locations are populated, which is roughly where the
+     * per-entry cost of sparse storage catches up with a reference per location.
+     *
+     * @param rows      The number of rows in the map.
+     * @param columns   The number of columns in the map.
+     * @param populated The number of populated locations.
+     * @return true if the map should be a DenseWorld.
+     */
+    public static boolean prefersDense(long rows, long columns, long populated) {
+        long locations = rows * columns;
+        if (locations > Integer.MAX_VALUE - 8) {
+            return false;
+        }
+        return locations <= SMALL_MAP_LOCATIONS || populated * 2 >= locations;
+    }
+
+    /**
+     * Creates a world with the populated locations given as parallel arrays, choosing dense or
+     * sparse storage with prefersDense. Locations are assigned in order, so a later entry for the
+     * same location replaces an earlier one.
+     *
+     * @param rows      The number of rows in the map.
+     * @param columns   The number of columns in the map.
+     * @param cellRows  The row of each populated location.
+     * @param cellCols  The column of each populated location.
+     * @param cells     The fields/attributes of each populated location.
+     * @param count     The number of populated locations in the arrays.
+     * @param types     The rule table to resolve the types of the locations with.
+     * @return The world.
+     * @throws ArrayIndexOutOfBoundsException If a location is outside the map.
+     */
+    public static World of(int rows, int columns, int[] cellRows, int[] cellCols,
+            String[][] cells, int count, EntityTypes types) {
+        if (prefersDense(rows, columns, count)) {
+            String[][][] map = new String[rows][columns][];
+            for (int i = 0; i < count; i++) {
+                map[cellRows[i]][cellCols[i]] = cells[i];
+            }
+            return DenseWorld.adopt(map, types);
+        }
+        SparseWorld world = new SparseWorld(rows, columns, count, types);
+        for (int i = 0; i < count; i++) {
+            world.set(cellRows[i], cellCols[i], cells[i]);
+        }
+        return world;
+    }
+
+    /**
+     * Receives the populated locations of a World.
+     */
+    public interface LocationVisitor {
+        void visit(int row, int column, String[] fields);
+    }
+
+    /**
+     * Checks that a location is within the map, the same way indexing the String[][][] map did.
+     */
+    protected void checkBounds(int row, int column) {
+        if (row < 0 || row >= rows) {
+            throw new ArrayIndexOutOfBoundsException(
+                    "Index " + row + " out of bounds for length " + rows);
+        }
+        if (column < 0 || column >= columns) {
+            throw new ArrayIndexOutOfBoundsException(
+                    "Index " + column + " out of bounds for length " + columns);
+        }
+    }
+}